@@ -0,0 +1,51 @@
+package io.slingr.endpoints.ethereum.benchmarks;
+
+import io.slingr.endpoints.ethereum.CryptoUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@code CryptoUtils} when one instance is shared by several threads, as the endpoint does
+ * when functions read keys of managed accounts at the same time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class CryptoUtilsBenchmark {
+
+    private static final String PRIVATE_KEY = "49abb5988f0a6f06079c873a7bd1a962bc6d9ea84466a8a1b1b0382c172c131c";
+
+    private CryptoUtils cryptoUtils;
+    private String encryptedPrivateKey;
+
+    @Setup
+    public void setup() throws Exception {
+        cryptoUtils = new CryptoUtils("jdU72Jus72bnfOnzA82su!8s_27hsN0jsy#");
+        encryptedPrivateKey = cryptoUtils.encrypt(PRIVATE_KEY);
+    }
+
+    @Benchmark
+    public String encrypt() {
+        return cryptoUtils.encrypt(PRIVATE_KEY);
+    }
+
+    @Benchmark
+    public String decrypt() {
+        return cryptoUtils.decrypt(encryptedPrivateKey);
+    }
+}
@@ -0,0 +1,69 @@
+package io.slingr.endpoints.ethereum.benchmarks;
+
+import io.slingr.endpoints.ethereum.EthereumHelper;
+import io.slingr.endpoints.utils.Json;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding of calls, decoding of results and decoding of logs for an ERC-20 token, using the recorded
+ * receipt for the log.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EthereumHelperBenchmark {
+
+    private EthereumHelper ethereumHelper;
+    private Json transferDef;
+    private Json transferParams;
+    private Json balanceOfDef;
+    private String balance;
+    private Json transferEventDef;
+    private List<Object> logTopics;
+    private String logData;
+
+    @Setup
+    public void setup() throws IOException {
+        ethereumHelper = new EthereumHelper();
+        Json abi = RpcFixtures.load("erc20Abi.json");
+        transferDef = ethereumHelper.getFunctionDefinition(abi, "transfer");
+        transferParams = Json.list().push("0x19d7b3090febf5596a9a0cf28c7172c53eaa351a").push("100000000");
+        balanceOfDef = ethereumHelper.getFunctionDefinition(abi, "balanceOf");
+        balance = "0x0000000000000000000000000000000000000000000000000000000005f5e100";
+        transferEventDef = ethereumHelper.getEventDefinition(abi, "Transfer");
+        Json log = new RpcFixtures().result("eth_getTransactionReceipt").jsons("logs").get(0);
+        logTopics = log.json("topics").toList();
+        logData = log.string("data");
+    }
+
+    @Benchmark
+    public String encodeFunction() {
+        return ethereumHelper.encodeFunction(transferDef, transferParams);
+    }
+
+    @Benchmark
+    public Json decodeResult() {
+        return ethereumHelper.decodeResult(balanceOfDef, balance);
+    }
+
+    @Benchmark
+    public Json processResult() {
+        return ethereumHelper.processResult(transferEventDef, logTopics, logData);
+    }
+}
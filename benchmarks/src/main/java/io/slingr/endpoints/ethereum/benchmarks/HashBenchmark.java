@@ -0,0 +1,83 @@
+package io.slingr.endpoints.ethereum.benchmarks;
+
+import org.ethereum.crypto.HashUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares hashing with a digest looked up in the crypto provider on each call against the engines
+ * reused by each thread. Sizes go from an event signature to a big transaction.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashBenchmark {
+
+    @Param({"32", "136", "1024", "16384"})
+    private int size;
+
+    private byte[] input;
+    private ByteBuffer directInput;
+    private byte[] output = new byte[HashUtil.HASH_256_LENGTH];
+
+    @Setup
+    public void setup() {
+        input = new byte[size];
+        new Random(size).nextBytes(input);
+        directInput = ByteBuffer.allocateDirect(size);
+        directInput.put(input);
+        directInput.flip();
+    }
+
+    @Benchmark
+    public byte[] providerDigest() {
+        return HashUtil.sha3WithProvider(input);
+    }
+
+    @Benchmark
+    public byte[] threadLocalDigest() {
+        return HashUtil.sha3(input);
+    }
+
+    @Benchmark
+    public byte[] threadLocalDigestIntoOutput() {
+        HashUtil.sha3(input, 0, input.length, output, 0);
+        return output;
+    }
+
+    @Benchmark
+    public byte[] threadLocalDigestDirectBuffer() {
+        directInput.rewind();
+        HashUtil.sha3(directInput, output, 0);
+        return output;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public byte[] providerDigestContended() {
+        return HashUtil.sha3WithProvider(input);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public byte[] threadLocalDigestContended() {
+        return HashUtil.sha3(input);
+    }
+}
@@ -0,0 +1,69 @@
+package io.slingr.endpoints.ethereum.benchmarks;
+
+import org.ethereum.crypto.cryptohash.FastKeccak256;
+import org.ethereum.crypto.cryptohash.Keccak256;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spongycastle.crypto.digests.KeccakDigest;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the Keccak-256 engines: the original port, the optimized one used by {@code HashUtil} and
+ * the one in Bouncy Castle. All engines are reused between calls, so only the hashing is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeccakBenchmark {
+
+    @Param({"32", "256", "1024", "4096", "16384", "65536"})
+    private int size;
+
+    private byte[] input;
+    private byte[] output = new byte[32];
+
+    private Keccak256 keccak256 = new Keccak256();
+    private FastKeccak256 fastKeccak256 = new FastKeccak256();
+    private KeccakDigest keccakDigest = new KeccakDigest(256);
+
+    @Setup
+    public void setup() {
+        input = new byte[size];
+        new Random(size).nextBytes(input);
+    }
+
+    @Benchmark
+    public byte[] currentEngine() {
+        keccak256.update(input, 0, input.length);
+        keccak256.digest(output, 0, output.length);
+        return output;
+    }
+
+    @Benchmark
+    public byte[] fastEngine() {
+        fastKeccak256.update(input, 0, input.length);
+        fastKeccak256.digest(output, 0);
+        return output;
+    }
+
+    @Benchmark
+    public byte[] bouncyCastle() {
+        keccakDigest.update(input, 0, input.length);
+        keccakDigest.doFinal(output, 0);
+        return output;
+    }
+}
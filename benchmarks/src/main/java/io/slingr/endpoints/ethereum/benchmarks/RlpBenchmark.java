@@ -0,0 +1,67 @@
+package io.slingr.endpoints.ethereum.benchmarks;
+
+import org.ethereum.util.RLP;
+import org.ethereum.util.RLPList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of a list shaped like a transaction, where the size of the data field changes
+ * from a simple transfer to a contract deployment.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RlpBenchmark {
+
+    @Param({"0", "68", "4096"})
+    private int dataSize;
+
+    private List<Object> items;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(dataSize);
+        byte[] address = new byte[20];
+        random.nextBytes(address);
+        byte[] data = new byte[dataSize];
+        random.nextBytes(data);
+        items = new ArrayList<>();
+        items.add(BigInteger.valueOf(42));
+        items.add(BigInteger.valueOf(20000000000L));
+        items.add(BigInteger.valueOf(210000));
+        items.add(address);
+        items.add(new BigInteger("1000000000000000000"));
+        items.add(data);
+        encoded = RLP.encode(items);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return RLP.encode(items);
+    }
+
+    @Benchmark
+    public RLPList decode2() {
+        return RLP.decode2(encoded);
+    }
+}
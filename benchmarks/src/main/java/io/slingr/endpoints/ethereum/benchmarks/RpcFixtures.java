@@ -0,0 +1,74 @@
+package io.slingr.endpoints.ethereum.benchmarks;
+
+import io.slingr.endpoints.services.HttpService;
+import io.slingr.endpoints.utils.Json;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Responses recorded from a node, used to replace the HTTP service so benchmarks don't depend on the
+ * network. There is one file per JSON-RPC method in the folder <code>fixtures</code>.
+ */
+public class RpcFixtures {
+
+    private static final String FOLDER = "fixtures/";
+    private static final String[] METHODS = {"eth_getBlockByHash", "eth_getTransactionReceipt"};
+
+    private final Map<String, String> results = new HashMap<>();
+
+    public RpcFixtures() throws IOException {
+        for (String method : METHODS) {
+            results.put(method, load(method + ".json").json("result").toString());
+        }
+    }
+
+    public static Json load(String fileName) throws IOException {
+        return Json.fromInternalFile(FOLDER + fileName);
+    }
+
+    public Json result(String method) {
+        return Json.parse(results.get(method));
+    }
+
+    /**
+     * Returns an HTTP service that answers single and batch requests with the recorded results. Responses
+     * are parsed from text on each call, as it happens with the real service. Receipts are returned for any
+     * transaction hash.
+     */
+    public HttpService stubHttpService() throws Exception {
+        HttpService httpService = mock(HttpService.class);
+        when(httpService.post(any(Json.class))).thenAnswer(invocation -> {
+            Json body = (Json) invocation.getArguments()[0];
+            if (body.toString().startsWith("[")) {
+                Json responses = Json.list();
+                for (Json request : body.jsons()) {
+                    responses.push(respond(request));
+                }
+                return responses;
+            }
+            return respond(body);
+        });
+        return httpService;
+    }
+
+    private Json respond(Json request) {
+        String method = request.string("method");
+        Json response = Json.map()
+                .set("jsonrpc", "2.0")
+                .set("id", request.longInteger("id"));
+        if (!results.containsKey(method)) {
+            return response.set("error", Json.map().set("code", -32601).set("message", "Method not recorded: " + method));
+        }
+        Json result = result(method);
+        if ("eth_getTransactionReceipt".equals(method)) {
+            result.set("transactionHash", request.strings("params").get(0));
+        }
+        return response.set("result", result);
+    }
+}
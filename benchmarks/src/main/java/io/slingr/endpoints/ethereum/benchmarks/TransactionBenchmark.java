@@ -0,0 +1,79 @@
+package io.slingr.endpoints.ethereum.benchmarks;
+
+import org.ethereum.core.Transaction;
+import org.ethereum.crypto.ECKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spongycastle.util.BigIntegers;
+import org.spongycastle.util.encoders.Hex;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Steps done to sign a transaction: getting the key from the private key, signing and encoding the
+ * signed transaction. A new transaction is created on each call because it caches its hash and encoding.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransactionBenchmark {
+
+    private static final int CHAIN_ID = 1;
+    private static final byte[] NONCE = {9};
+    private static final byte[] GAS_PRICE = Hex.decode("04a817c800");
+    private static final byte[] GAS_LIMIT = Hex.decode("5208");
+    private static final byte[] VALUE = Hex.decode("0de0b6b3a7640000");
+
+    private byte[] privateKey;
+    private ECKey key;
+    private ECKey.ECDSASignature signature;
+    private byte[] receiveAddress;
+    private byte[] data;
+
+    @Setup
+    public void setup() {
+        privateKey = Hex.decode("4646464646464646464646464646464646464646464646464646464646464646");
+        key = ECKey.fromPrivate(privateKey);
+        receiveAddress = Hex.decode("3535353535353535353535353535353535353535");
+        // transfer(address,uint256)
+        data = Hex.decode("a9059cbb00000000000000000000000019d7b3090febf5596a9a0cf28c7172c53eaa351a" +
+                "0000000000000000000000000000000000000000000000000000000005f5e100");
+        Transaction signedTransaction = newTransaction();
+        signedTransaction.sign(key);
+        signature = signedTransaction.getSignature();
+    }
+
+    @Benchmark
+    public byte[] fromPrivate() {
+        return ECKey.fromPrivate(privateKey).getAddress();
+    }
+
+    @Benchmark
+    public Transaction sign() {
+        Transaction transaction = newTransaction();
+        transaction.sign(key);
+        return transaction;
+    }
+
+    @Benchmark
+    public byte[] getEncoded() {
+        Transaction transaction = new Transaction(NONCE, GAS_PRICE, GAS_LIMIT, receiveAddress, VALUE, data, BigIntegers.asUnsignedByteArray(signature.r),
+                BigIntegers.asUnsignedByteArray(signature.s), signature.v, CHAIN_ID);
+        return transaction.getEncoded();
+    }
+
+    private Transaction newTransaction() {
+        return new Transaction(NONCE, GAS_PRICE, GAS_LIMIT, receiveAddress, VALUE, data, CHAIN_ID);
+    }
+}
@@ -0,0 +1,141 @@
+package io.slingr.endpoints.ethereum.benchmarks;
+
+import io.slingr.endpoints.ethereum.Block;
+import io.slingr.endpoints.ethereum.BlockContext;
+import io.slingr.endpoints.ethereum.EthereumApiHelper;
+import io.slingr.endpoints.ethereum.EthereumHelper;
+import io.slingr.endpoints.ethereum.EventDispatcher;
+import io.slingr.endpoints.ethereum.Metrics;
+import io.slingr.endpoints.ethereum.NonceManager;
+import io.slingr.endpoints.ethereum.Transaction;
+import io.slingr.endpoints.ethereum.TransactionManager;
+import io.slingr.endpoints.services.AppLogs;
+import io.slingr.endpoints.services.datastores.DataStore;
+import io.slingr.endpoints.services.datastores.DataStoreResponse;
+import io.slingr.endpoints.utils.Json;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Processing of a new block with a set of pending transactions, where some of them are in the block and
+ * are confirmed right away. Receipts come from the recorded responses and the data store and events are
+ * stubbed, so it measures the work done by the endpoint: matching transactions, fetching and parsing
+ * receipts, and building events.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransactionManagerBenchmark {
+
+    private static final int TRANSACTIONS_IN_BLOCK = 100;
+
+    @Param({"100", "1000", "10000"})
+    private int pendingCount;
+
+    private TransactionManager transactionManager;
+    private BlockContext blockContext;
+    private List<String> blockTransactions;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        RpcFixtures fixtures = new RpcFixtures();
+        EthereumApiHelper ethereumApiHelper = new EthereumApiHelper(fixtures.stubHttpService());
+
+        // documents are saved with their hash as id and there are no documents to load when it starts
+        DataStoreResponse emptyResponse = mock(DataStoreResponse.class);
+        when(emptyResponse.getItems()).thenReturn(Collections.emptyList());
+        DataStore transactionsDs = mock(DataStore.class, invocation -> {
+            if (invocation.getMethod().getReturnType() == DataStoreResponse.class) {
+                return emptyResponse;
+            }
+            if ("save".equals(invocation.getMethod().getName())) {
+                Json document = (Json) invocation.getArguments()[0];
+                return document.set(Transaction.ID, document.string(Transaction.TX_HASH));
+            }
+            return null;
+        });
+        // events are considered sent as soon as they are dispatched
+        EventDispatcher eventDispatcher = mock(EventDispatcher.class);
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArguments()[1]).run();
+            return null;
+        }).when(eventDispatcher).dispatch(any(), any(Runnable.class));
+
+        Metrics metrics = new Metrics();
+        transactionManager = new TransactionManager(ethereumApiHelper, eventDispatcher, mock(AppLogs.class), transactionsDs,
+                new NonceManager(ethereumApiHelper, metrics), null, metrics);
+        transactionManager.start();
+
+        Json blockInfo = fixtures.result("eth_getBlockByHash");
+        Json transactions = Json.list();
+        blockTransactions = new ArrayList<>();
+        for (int i = 0; i < Math.min(TRANSACTIONS_IN_BLOCK, pendingCount); i++) {
+            String txHash = txHash(i);
+            transactions.push(txHash);
+            blockTransactions.add(txHash);
+        }
+        blockInfo.set(Block.TRANSACTIONS, transactions);
+        Block block = new Block(blockInfo.string(Block.PARENT_HASH), blockInfo.string(Block.HASH),
+                EthereumHelper.convertedHexToNumber(blockInfo.string(Block.NUMBER)), false,
+                EthereumHelper.convertedHexToNumber(blockInfo.string(Block.TIMESTAMP)));
+        block.setOriginalBlockInfo(blockInfo);
+        blockContext = new BlockContext(block);
+
+        // transactions that are not in the block stay pending during the whole benchmark
+        for (int i = blockTransactions.size(); i < pendingCount; i++) {
+            register(i);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void registerBlockTransactions() {
+        // transactions in the block are removed from the pending set when they are confirmed
+        for (int i = 0; i < blockTransactions.size(); i++) {
+            register(i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        transactionManager.shutdown();
+    }
+
+    @Benchmark
+    public void processTransactionsInBlock() {
+        transactionManager.processTransactionsInBlock(blockContext);
+    }
+
+    private void register(int index) {
+        // each transaction has its own sender so they are not replaced by transactions with the same nonce
+        transactionManager.registerTransaction(txHash(index), "0x0", String.format("0x%040x", index), "function-" + index,
+                System.currentTimeMillis(), Long.MAX_VALUE, 0);
+    }
+
+    private static String txHash(int index) {
+        return String.format("0x%064x", index);
+    }
+}
@@ -62,8 +62,6 @@ endpoint.utils.getFunctionDefFromABI = function (fnName, aliasOrAddress) {
 };
 
 endpoint.utils.processSubmittedTransaction = function (msg, res) {
-    sys.storage.put("ethereum-endpoint-"+msg.options.from+'-nonce', msg.data.nonce, {ttl: 2 * 60 * 1000});
-    globalUnlock(msg.options.from);
     if (msg.options.submitted) {
         var func = 'var callback = ' + msg.options.submitted + ';'
             + '\ncallback(context.msg, context.res);';
@@ -118,8 +116,7 @@ endpoint.utils.processSubmittedTransaction = function (msg, res) {
 };
 
 endpoint.utils.processDeclinedTransaction = function (msg, res) {
-    sys.storage.remove("ethereum-endpoint-"+msg.options.from+"-nonce");
-    globalUnlock(msg.options.from);
+    releaseNonce(msg.options, false);
     if (msg.options.error) {
         if (!res) {
             res = {};
@@ -133,7 +130,8 @@ endpoint.utils.processDeclinedTransaction = function (msg, res) {
 };
 
 endpoint.utils.processErrorTransaction = function (msg, res) {
-    globalUnlock(msg.options.from);
+    // if the node didn't accept the transaction, the nonce could have been used outside the endpoint
+    releaseNonce(msg.options, !!res && res.errorCode == 'invalidNetwork');
     if (msg.options.error) {
         var func = 'var callback = ' + msg.options.error + ';' +
             '\ncallback(context.msg, context.res);';
@@ -339,6 +337,68 @@ endpoint.encodeFunction = function (aliasOrAddress, fnName, params) {
     return data;
 };
 
+/**
+ * Encodes many calls to the same function at once. It is much faster than calling encodeFunction()
+ * for each call.
+ *
+ * @param aliasOrAddress the contract's alias or address
+ * @param fnName name of the function in the contract
+ * @param paramsList an array where each element is the array of params of one call
+ * @param parallel if true calls are encoded in parallel, which is useful for thousands of calls; optional
+ * @returns {*} an array with the encoded function calls, in the same order as the params
+ */
+endpoint.encodeFunctions = function (aliasOrAddress, fnName, paramsList, parallel) {
+    paramsList = paramsList || [];
+    var functionAbiDef = endpoint.utils.getFunctionDefFromABI(fnName, aliasOrAddress);
+    if (!functionAbiDef) {
+        throw 'Cannot find function [' + fnName + '] in ABI';
+    }
+    var items = [];
+    for (var i = 0; i < paramsList.length; i++) {
+        items.push({params: paramsList[i] || []});
+    }
+    var res = endpoint._encodeFunctions({fnAbi: functionAbiDef, items: items, parallel: !!parallel});
+    var data = [];
+    for (var j = 0; j < res.results.length; j++) {
+        if (res.results[j].error) {
+            throw 'There was a problem encoding params at index [' + j + ']: ' + res.results[j].error;
+        }
+        data.push(res.results[j].body);
+    }
+    return data;
+};
+
+/**
+ * Decodes many responses of the same function at once. It is much faster than decoding
+ * each response separately.
+ *
+ * @param aliasOrAddress the contract's alias or address
+ * @param fnName name of the function in the contract
+ * @param dataList an array with the data returned by each call
+ * @param parallel if true responses are decoded in parallel, which is useful for thousands of responses; optional
+ * @returns {*} an array with the decoded responses, in the same order as the data
+ */
+endpoint.decodeFunctions = function (aliasOrAddress, fnName, dataList, parallel) {
+    dataList = dataList || [];
+    var functionAbiDef = endpoint.utils.getFunctionDefFromABI(fnName, aliasOrAddress);
+    if (!functionAbiDef) {
+        throw 'Cannot find function [' + fnName + '] in ABI';
+    }
+    var items = [];
+    for (var i = 0; i < dataList.length; i++) {
+        items.push({data: dataList[i]});
+    }
+    var res = endpoint._decodeFunctions({fnAbi: functionAbiDef, items: items, parallel: !!parallel});
+    var decodedData = [];
+    for (var j = 0; j < res.results.length; j++) {
+        if (res.results[j].error) {
+            throw 'There was a problem decoding data at index [' + j + ']: ' + res.results[j].error;
+        }
+        decodedData.push(res.results[j].result);
+    }
+    return decodedData;
+};
+
 /**
  * Calls a view function in a contract (it doesn't change the state of the blockchain) and returns
  * the response.
@@ -386,6 +446,115 @@ endpoint.callFunction = function (aliasOrAddress, fnName, params, fromAddress) {
     }
 };
 
+/**
+ * Calls many view functions at once. If a Multicall contract is configured in the endpoint all calls are
+ * executed in one call to the node; otherwise they are sent together in batches. This is much faster than
+ * calling callFunction() for each of them.
+ *
+ * @param calls an array of objects with aliasOrAddress, fnName and params (an array with the params of the function)
+ * @param fromAddress origin account address; optional
+ * @param block the block where functions are called; optional, it is 'latest' by default
+ * @returns {*} an array with one object per call, in the same order, with the response of the function in the
+ *              field 'result' or the error message in the field 'error'
+ */
+endpoint.multiCall = function (calls, fromAddress, block) {
+    calls = calls || [];
+    var res = endpoint._multiCall({calls: calls, from: fromAddress, block: block || 'latest'});
+    return res.results;
+};
+
+/**
+ * Signs many transactions at once with accounts managed by the endpoint. Keys are looked up once per
+ * account and transactions are signed in parallel, so it is much faster than signing them one by one.
+ * Transactions are not sent to the network.
+ *
+ * @param transactions an array of raw transactions, each one with 'from', 'nonce', 'gasPrice', 'gas', 'to',
+ * 'value', 'data' and 'netId'; values are hexadecimal strings
+ * @returns {*} an array with the signed transactions, RLP-encoded, in the same order as the raw transactions
+ */
+endpoint.signTransactions = function (transactions) {
+    transactions = transactions || [];
+    var res = endpoint._signTransactions({transactions: transactions});
+    var data = [];
+    for (var i = 0; i < res.results.length; i++) {
+        if (res.results[i].error) {
+            throw 'There was a problem signing transaction at index [' + i + ']: ' + res.results[i].error;
+        }
+        data.push(res.results[i].data);
+    }
+    return data;
+};
+
+/**
+ * Sends many signed transactions to the network. Transactions are queued in the endpoint and sent in batches,
+ * so this returns right away with the hashes and the app doesn't need to wait for the node. Transactions the
+ * node doesn't accept are rejected; if they are accepted, they are followed until they are confirmed.
+ *
+ * @param signedTransactions an array of signed transactions, like the ones returned by signTransactions(); each
+ * element can also be an object with the signed transaction in 'data' and the sender in 'from'
+ * @param options callbacks 'confirmed' and 'error', called for each transaction, and 'confirmationTimeout' and
+ * 'confirmationBlocks' as in sendTransaction(); optional
+ * @returns {*} an array with the hashes of the transactions, in the same order
+ */
+endpoint.submitTransactions = function (signedTransactions, options) {
+    signedTransactions = signedTransactions || [];
+    options = options || {};
+    var transactions = [];
+    for (var i = 0; i < signedTransactions.length; i++) {
+        var tx = signedTransactions[i];
+        transactions.push(typeof tx == 'string' ? {data: tx} : tx);
+    }
+    var params = {transactions: transactions};
+    if (options.confirmationTimeout) {
+        params.confirmationTimeout = options.confirmationTimeout;
+    }
+    if (options.confirmationBlocks) {
+        params.confirmationBlocks = options.confirmationBlocks;
+    }
+    var callbackData = {
+        endpointName: endpoint._name,
+        options: JSON.parse(sys.utils.text.stringify(options))
+    };
+    var txCallbacks = {
+        transactionConfirmed: function (receiptObj, data) {
+            if (data.options.confirmed) {
+                var receipt = receiptObj.data;
+                var events = app.endpoints[data.endpointName]._decodeLogsInReceipt(receipt);
+                var func = 'var callback = ' + data.options.confirmed + ';' +
+                    '\ncallback(context.receipt, context.events);';
+                sys.utils.script.eval(func, {receipt: receipt, events: events});
+            }
+        },
+        transactionRejected: function (response, data) {
+            if (data.options.error) {
+                var func = 'var callback = ' + data.options.error + ';' +
+                    '\ncallback(context.response);';
+                sys.utils.script.eval(func, {response: response.data});
+            }
+        }
+    };
+    var res = endpoint._submitTransactions(params, callbackData, txCallbacks);
+    var hashes = [];
+    for (var j = 0; j < res.results.length; j++) {
+        if (res.results[j].error) {
+            throw 'There was a problem submitting transaction at index [' + j + ']: ' + res.results[j].error;
+        }
+        hashes.push(res.results[j].txHash);
+    }
+    return hashes;
+};
+
+/**
+ * Returns the metrics of the endpoint since it started: latencies of requests to the node and locks,
+ * how many blocks the endpoint is behind the network, pending transactions and events, and queues.
+ * Latencies have the count, mean, max and percentiles in milliseconds.
+ *
+ * @returns {*} an object with 'latencies', 'counters' and 'gauges'
+ */
+endpoint.getMetrics = function () {
+    return endpoint._getMetrics({});
+};
+
 /**
  * Estimates the needed gas to make a transaction. Keep in mind that this is just an estimation and real
  * gas when the transaction is executed might be different.
@@ -429,7 +598,6 @@ endpoint.estimateTransaction = function (aliasOrAddress, fnName, params, fromAdd
  *                and callbacks: submitted, confirmed, error.
  */
 endpoint.sendTransaction = function (aliasOrAddress, fnName, params, fromAddress, signMethod, options) {
-    globalLock(fromAddress);
     try {
         options = options || {};
         params = params || [];
@@ -452,17 +620,18 @@ endpoint.sendTransaction = function (aliasOrAddress, fnName, params, fromAddress
         if (functionAbiDef['stateMutability'] === 'view') {
             throw 'This function is a view. Use the method callFunction() instead.';
         }
+        options.from = fromAddress;
         if (!options.nonce) {
-            options.nonce = getNonce(fromAddress);
+            options.nonce = reserveNonce(fromAddress);
+            options.nonceReserved = true;
         }
         options.to = endpoint.utils.isAddress(aliasOrAddress) ? aliasOrAddress : endpoint.utils.getContractAddressByAlias(aliasOrAddress);
         options.data = data;
         options.netId = endpoint.net.version();
-        options.from = fromAddress;
         options.signMethod = signMethod;
         endpoint.utils.internalSendTransaction(options);
     } catch (e) {
-        globalUnlock(fromAddress);
+        releaseNonce(options, false);
         throw e;
     }
 };
@@ -480,7 +649,6 @@ endpoint.sendTransaction = function (aliasOrAddress, fnName, params, fromAddress
  *                and callbacks: submitted, confirmed, error.
  */
 endpoint.sendEther = function (aliasOrAddress, amount, fromAddress, signMethod, options) {
-    globalLock(fromAddress);
     try {
         options = options || {};
         if (!fromAddress) {
@@ -489,17 +657,18 @@ endpoint.sendEther = function (aliasOrAddress, amount, fromAddress, signMethod,
         if (!signMethod) {
             throw 'Sign method must be specified for this call.';
         }
+        options.from = fromAddress;
         if (!options.nonce) {
-            options.nonce = getNonce(fromAddress);
+            options.nonce = reserveNonce(fromAddress);
+            options.nonceReserved = true;
         }
         options.to = endpoint.utils.isAddress(aliasOrAddress) ? aliasOrAddress : endpoint.utils.getContractAddressByAlias(aliasOrAddress);
         options.value = amount;
         options.netId = endpoint.net.version();
-        options.from = fromAddress;
         options.signMethod = signMethod;
         endpoint.utils.internalSendTransaction(options);
     } catch (e) {
-        globalUnlock(fromAddress);
+        releaseNonce(options, false);
         throw e;
     }
 };
@@ -516,7 +685,6 @@ endpoint.sendEther = function (aliasOrAddress, amount, fromAddress, signMethod,
  *                and callbacks: submitted, confirmed, error.
  */
 endpoint.createContract = function (alias, compiledCode, abi, fromAddress, signMethod, options) {
-    globalLock(fromAddress);
     try {
         if (alias && endpoint.getContract(alias)) {
             throw 'There is another contract with alias [' + alias + ']';
@@ -531,11 +699,12 @@ endpoint.createContract = function (alias, compiledCode, abi, fromAddress, signM
             throw 'Address must be specified for this call.';
         }
         options = options || {};
+        options.from = fromAddress;
         if (!options.nonce) {
-            options.nonce = getNonce(fromAddress);
+            options.nonce = reserveNonce(fromAddress);
+            options.nonceReserved = true;
         }
         options.netId = endpoint.net.version();
-        options.from = fromAddress;
         options.signMethod = signMethod;
         options.originalConfirmedCallback = options.confirmed;
         options.contractInfo = {
@@ -557,7 +726,7 @@ endpoint.createContract = function (alias, compiledCode, abi, fromAddress, signM
         };
         endpoint.utils.internalSendTransaction(options);
     } catch (e) {
-        globalUnlock(fromAddress);
+        releaseNonce(options, false);
         throw e;
     }
 };
@@ -746,27 +915,18 @@ var isObject = function (obj) {
 
 var stringType = Function.prototype.call.bind(Object.prototype.toString);
 
-function globalLock(key, timeout) {
-    if (!timeout) timeout = 5000 * 60;
-    var timeSpent = 0;
-    while (!sys.storage.putIfAbsent(key, key, {ttl: 10 * 60 * 1000}) && timeSpent < timeout) {
-        sys.utils.script.wait(100);
-        timeSpent += 100;
-    }
-    if (timeSpent > timeout)
-        throw 'The lock is spending more time than the given timeout';
-}
-
-function globalUnlock(key) {
-    sys.storage.remove(key);
+function reserveNonce(address) {
+    return endpoint._reserveNonce({address: address}).nonce;
 }
 
-function getNonce(address) {
-    var lastNonce = sys.storage.get("ethereum-endpoint-"+address+'-nonce');
-    if (lastNonce) {
-        var newNonce = parseInt(lastNonce) + 1;
-        return '0x'+newNonce.toString(16);
-    } else {
-        return endpoint.eth.transactionCount(address, 'pending');
+function releaseNonce(options, resync) {
+    // only nonces reserved by the endpoint are released, not the ones given by the app
+    if (options && options.nonceReserved) {
+        options.nonceReserved = false;
+        try {
+            endpoint._releaseNonce({address: options.from, nonce: options.nonce, resync: resync});
+        } catch (e) {
+            sys.logs.warn('Cannot release nonce [' + options.nonce + '] of address [' + options.from + ']', e);
+        }
     }
 }
\ No newline at end of file
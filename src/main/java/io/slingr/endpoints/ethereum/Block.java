@@ -6,9 +6,12 @@ public class Block {
     public static final String PARENT_HASH = "parentHash";
     public static final String HASH = "hash";
     public static final String NUMBER = "number";
+    // the number is stored as a string, this copy is a number so it can be used in range filters
+    public static final String NUMBER_VALUE = "numberValue";
     public static final String REMOVED = "removed";
     public static final String TIMESTAMP = "timestamp";
     public static final String ORIGINAL_BLOCK_INFO = "originalBlockInfo";
+    public static final String TRANSACTIONS = "transactions";
 
 
     private String parentHash;
@@ -96,11 +99,27 @@ public class Block {
                 .set(PARENT_HASH, parentHash)
                 .set(HASH, hash)
                 .set(NUMBER, ""+number)
+                .set(NUMBER_VALUE, number)
                 .set(REMOVED, ""+removed) // we store as string so we can filter this field
                 .set(TIMESTAMP, timestamp)
                 .set(ORIGINAL_BLOCK_INFO, originalBlockInfo);
     }
 
+    /**
+     * Same as {@link #toJson()}, but without the original block info. It is used where only the hash and the
+     * number of the block are read again, like the documents of events. Stored blocks keep the original info
+     * because it is sent to the app if the block is removed.
+     */
+    public Json toSummaryJson() {
+        return Json.map()
+                .set(PARENT_HASH, parentHash)
+                .set(HASH, hash)
+                .set(NUMBER, ""+number)
+                .set(NUMBER_VALUE, number)
+                .set(REMOVED, ""+removed)
+                .set(TIMESTAMP, timestamp);
+    }
+
     public void fromGethJson(Json json) {
         setParentHash(json.string("parentHash"));
         setHash(json.string("hash"));
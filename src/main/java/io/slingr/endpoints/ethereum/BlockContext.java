@@ -0,0 +1,79 @@
+package io.slingr.endpoints.ethereum;
+
+import io.slingr.endpoints.utils.Json;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Everything known about a new block, shared by all listeners so the block is fetched only once.
+ * It holds the block as returned by the node, the hashes of its transactions and, once they are
+ * fetched, the logs of registered contracts.
+ */
+public class BlockContext {
+    private final Block block;
+    private Set<String> transactionHashes;
+    private List<Json> logs;
+
+    public BlockContext(Block block) {
+        this.block = block;
+    }
+
+    public Block getBlock() {
+        return block;
+    }
+
+    public String getHash() {
+        return block.getHash();
+    }
+
+    public Long getNumber() {
+        return block.getNumber();
+    }
+
+    /**
+     * Returns the hashes of the transactions in the block. It works whether the block was fetched with full
+     * transactions or not.
+     *
+     * @return the hashes of the transactions in the order they are in the block
+     */
+    public synchronized Set<String> getTransactionHashes() {
+        if (transactionHashes == null) {
+            Set<String> hashes = new LinkedHashSet<>();
+            Json blockInfo = block.getOriginalBlockInfo();
+            List<Object> transactions = blockInfo != null ? blockInfo.objects(Block.TRANSACTIONS) : null;
+            if (transactions != null) {
+                for (Object transaction : transactions) {
+                    if (transaction instanceof Json) {
+                        hashes.add(((Json) transaction).string("hash"));
+                    } else if (transaction instanceof Map) {
+                        hashes.add((String) ((Map) transaction).get("hash"));
+                    } else if (transaction instanceof String) {
+                        hashes.add((String) transaction);
+                    }
+                }
+            }
+            transactionHashes = Collections.unmodifiableSet(hashes);
+        }
+        return transactionHashes;
+    }
+
+    public boolean hasTransactions() {
+        Json blockInfo = block.getOriginalBlockInfo();
+        return blockInfo != null && blockInfo.objects(Block.TRANSACTIONS) != null;
+    }
+
+    /**
+     * Returns the logs of registered contracts, or <code>null</code> if they were not fetched yet.
+     */
+    public synchronized List<Json> getLogs() {
+        return logs;
+    }
+
+    public synchronized void setLogs(List<Json> logs) {
+        this.logs = logs;
+    }
+}
@@ -6,17 +6,20 @@ import io.slingr.endpoints.services.datastores.DataStore;
 import io.slingr.endpoints.services.datastores.DataStoreResponse;
 import io.slingr.endpoints.utils.Json;
 import org.apache.commons.lang3.StringUtils;
+import org.ethereum.util.ExecutorPipeline;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 public class BlocksManager {
     private static final Logger logger = LoggerFactory.getLogger(BlocksManager.class);
@@ -25,122 +28,424 @@ public class BlocksManager {
     private final int MAX_BLOCKS_DELAY = 360;
     private final int CLEANING_WAIT_TIME_MINUTES = 5;
     private final int MAX_SHUTDOWN_MINUTES = 5;
+    // when blocks come through the WebSocket subscription we still poll once in a while in case a head is missed
+    private final int SUBSCRIBED_POLLING_FACTOR = 12;
+    private final String FETCH_THREADS_PROPERTY = "blocksFetchThreads";
+    private final int DEFAULT_FETCH_THREADS = 4;
+    // blocks are processed in a pipeline: fetch (polling thread) -> enrich -> persist -> dispatch
+    // enriching can run in parallel because the order is restored before persisting, the other stages
+    // need a single thread to keep blocks in order
+    private final String ENRICH_THREADS_PROPERTY = "blocksEnrichThreads";
+    private final int DEFAULT_ENRICH_THREADS = 2;
+    // when a queue is full the previous stage waits, so the polling thread doesn't get too far ahead
+    private final String PIPELINE_QUEUE_SIZE_PROPERTY = "blocksPipelineQueueSize";
+    private final int DEFAULT_PIPELINE_QUEUE_SIZE = 16;
 
     private EthereumApiHelper ethereumApiHelper;
     private AppLogs appLogger;
     private DataStore blocksDs;
     private EthereumEvent callbacks;
     private final Json config;
+    private final String wsUrl;
 
     private String lastProcessedBlockHash = null;
+    private volatile long lastProcessedBlockNumber = -1;
+    // used for metrics: the head seen in the last poll and the last block that went through all the stages
+    private volatile long headBlockNumber = -1;
+    private volatile long lastDispatchedBlockNumber = -1;
     private EvictingQueue<String> lastBlocksHashes = EvictingQueue.create(MAX_BLOCKS);
+    // same as above but only for blocks that were saved in the data store, changed by the persist stage
+    private String lastPersistedBlockHash = null;
+    private long lastPersistedBlockNumber = -1;
+    private EvictingQueue<String> lastPersistedBlocksHashes = EvictingQueue.create(MAX_BLOCKS);
+    // when a block cannot be persisted, the blocks fetched after it are discarded and the polling thread goes back
+    // to the last persisted block, so the failed block is fetched again in the next poll
+    private final Object rollbackLock = new Object();
+    private volatile long generation = 0;
+    private boolean rollbackPending = false;
+    private long pollGeneration = 0;
     private ScheduledExecutorService blockPollingExecutor;
     private ScheduledExecutorService cleanerExecutor;
-    private Lock lock = new ReentrantLock();
+    private ExecutorService catchUpExecutor;
+    private ExecutorPipeline<List<BlockTask>, List<BlockTask>> enrichStage;
+    private ExecutorPipeline<List<BlockTask>, List<BlockTask>> persistStage;
+    private ExecutorPipeline<List<BlockTask>, Void> dispatchStage;
+    private BlocksRetention blocksRetention;
+    private BlocksSubscriber blocksSubscriber;
+    private int skippedPolls = 0;
+    private Lock lock;
     private long pollingWaitTime;
+    private final int fetchThreads;
+    private final int enrichThreads;
+    private final int pipelineQueueSize;
+    private final Metrics metrics;
 
-    public BlocksManager(EthereumApiHelper ethereumApiHelper, AppLogs appLogger, DataStore blocksDs, EthereumEvent callbacks, Json config) {
+    public BlocksManager(EthereumApiHelper ethereumApiHelper, AppLogs appLogger, DataStore blocksDs, EthereumEvent callbacks, Json config, String wsUrl, Metrics metrics) {
         this.ethereumApiHelper = ethereumApiHelper;
         this.callbacks = callbacks;
         this.appLogger = appLogger;
         this.blocksDs = blocksDs;
         this.config = config;
+        this.wsUrl = wsUrl;
+        this.metrics = metrics;
+        this.lock = metrics.timedLock("blocks");
+        this.blocksRetention = new BlocksRetention(blocksDs, appLogger, MAX_BLOCKS * 2);
         this.pollingWaitTime = this.config.longInteger("pollingInterval", 5000);
+        this.fetchThreads = Math.max(1, this.config.longInteger(FETCH_THREADS_PROPERTY, DEFAULT_FETCH_THREADS).intValue());
+        this.enrichThreads = Math.max(1, this.config.longInteger(ENRICH_THREADS_PROPERTY, DEFAULT_ENRICH_THREADS).intValue());
+        this.pipelineQueueSize = Math.max(1, this.config.longInteger(PIPELINE_QUEUE_SIZE_PROPERTY, DEFAULT_PIPELINE_QUEUE_SIZE).intValue());
+        registerMetrics();
+    }
+
+    private void registerMetrics() {
+        metrics.gauge("blocks.headNumber", () -> headBlockNumber);
+        metrics.gauge("blocks.lastFetchedNumber", () -> lastProcessedBlockNumber);
+        metrics.gauge("blocks.lastDispatchedNumber", () -> lastDispatchedBlockNumber);
+        // how many blocks the apps are behind the network
+        metrics.gauge("blocks.lag", () -> headBlockNumber >= 0 && lastDispatchedBlockNumber >= 0 ? headBlockNumber - lastDispatchedBlockNumber : null);
+        metrics.gauge("blocks.pipelineQueues", this::getPipelineQueueSizes);
     }
 
     public void start() {
         initLastBlocks();
+        catchUpExecutor = Executors.newFixedThreadPool(fetchThreads);
+        initPipeline();
         // execute thread to check new blocks periodically
         blockPollingExecutor = Executors.newSingleThreadScheduledExecutor();
         Runnable blockPollingTask = () -> {
-            lock.lock();
             try {
-                List<Json> newBlocks = new ArrayList<>();
-                //appLogger.info("Getting last blocks from ethereum network");
-                Json lastBlock = getLastBlock();
-                if (lastBlock == null || StringUtils.equals(lastBlock.string("hash"), lastProcessedBlockHash)) {
-                    // we don't have anything to update
-                    return;
-                }
-                newBlocks.add(lastBlock);
-                String parentHash = lastBlock.string("parentHash");
-                // it can happen that the endpoint gets behind, and we need to process many blocks at the same time
-                // we will do this for a maximum of 360 blocks, which would be like an hour
-                while (!lastBlocksHashes.contains(parentHash) && newBlocks.size() < MAX_BLOCKS_DELAY) {
-                    appLogger.info(String.format("Getting block [%s] from ethereum network", parentHash));
-                    lastBlock = getBlockByHash(parentHash);
-                    if (lastBlock == null) {
-                        appLogger.warn("There were some issues polling for new blocks. We will retry in [" + pollingWaitTime + "] milliseconds");
+                CatchUp catchUp;
+                lock.lock();
+                try {
+                    applyPendingRollback();
+                    //appLogger.info("Getting last blocks from ethereum network");
+                    Json lastBlock = getLastBlock();
+                    if (lastBlock != null) {
+                        headBlockNumber = getBlockNumber(lastBlock);
+                    }
+                    if (lastBlock == null || StringUtils.equals(lastBlock.string("hash"), lastProcessedBlockHash)) {
+                        // we don't have anything to update
+                        return;
+                    }
+                    // if we are behind, try to get the missing blocks all at once by number
+                    catchUp = lastBlocksHashes.contains(lastBlock.string("parentHash")) ? null : prepareCatchUp(lastBlock);
+                    if (catchUp == null) {
+                        processBlocksFromHead(lastBlock);
                         return;
                     }
-                    newBlocks.add(lastBlock);
-                    parentHash = lastBlock.string("parentHash");
+                } finally {
+                    lock.unlock();
                 }
-                Collections.reverse(newBlocks);
-                for (Json newBlock : newBlocks) {
-                    processNewBlock(newBlock);
+                // this can take a while, so blocks are fetched without the lock and it is only taken to process them
+                List<Json> missingBlocks = getMissingBlocks(catchUp);
+                lock.lock();
+                try {
+                    if (catchUp.generation != generation) {
+                        // a block could not be persisted in the meantime, the next poll goes back to the last persisted one
+                        return;
+                    }
+                    if (missingBlocks != null) {
+                        missingBlocks.add(catchUp.head);
+                        processNewBlocks(missingBlocks);
+                    } else {
+                        processBlocksFromHead(catchUp.head);
+                    }
+                } finally {
+                    lock.unlock();
                 }
             } catch (Exception e) {
                 appLogger.error(String.format("Error polling for new blocks: [%s] consider to decrease the pollingWaitTime: [%d]", e.getMessage(), pollingWaitTime));
                 logger.error(String.format("Error polling for new blocks: [%s]", e.getMessage()), e);
-            } finally {
-                lock.unlock();
             }
         };
-        blockPollingExecutor.scheduleAtFixedRate(blockPollingTask, pollingWaitTime, pollingWaitTime, TimeUnit.MILLISECONDS);
+        Runnable scheduledPollingTask = () -> {
+            if (blocksSubscriber != null && blocksSubscriber.isConnected() && ++skippedPolls < SUBSCRIBED_POLLING_FACTOR) {
+                // new blocks are notified by the subscription
+                return;
+            }
+            skippedPolls = 0;
+            blockPollingTask.run();
+        };
+        blockPollingExecutor.scheduleAtFixedRate(scheduledPollingTask, pollingWaitTime, pollingWaitTime, TimeUnit.MILLISECONDS);
+        if (StringUtils.isNotBlank(wsUrl)) {
+            // new heads are processed in the polling thread, so they never run at the same time than a poll
+            blocksSubscriber = new BlocksSubscriber(wsUrl, () -> blockPollingExecutor.execute(blockPollingTask), appLogger);
+            blocksSubscriber.start();
+        }
         // execute thread to clean blocks from the database
         cleanerExecutor = Executors.newSingleThreadScheduledExecutor();
         Runnable cleanerTask = () -> {
-            lock.lock();
+            // this doesn't need the lock, so polling is never stalled by the cleaner
             try {
-                DataStoreResponse res = blocksDs.find();
-                List<Json> blocks = res.getItems();
-                int amountToRemove = blocks.size() - (MAX_BLOCKS * 2);
-                if (amountToRemove > 0) {
-                    appLogger.info(String.format("Removing [%s] old blocks", amountToRemove));
-                    for (int i = 0; i < amountToRemove; i++) {
-                        Json block = blocks.get(i);
-                        blocksDs.removeById(block.string("_id"));
-                    }
-                } else {
-                    appLogger.info("There are no blocks to remove");
-                }
+                blocksRetention.clean();
             } catch (Exception e) {
                 appLogger.error("Error cleaning old blocks", e);
-            } finally {
-                lock.unlock();
             }
         };
         cleanerExecutor.scheduleAtFixedRate(cleanerTask, CLEANING_WAIT_TIME_MINUTES, CLEANING_WAIT_TIME_MINUTES, TimeUnit.MINUTES);
     }
 
     public void shutdown() {
+        if (blocksSubscriber != null) {
+            blocksSubscriber.shutdown();
+        }
         blockPollingExecutor.shutdown();
         cleanerExecutor.shutdown();
         try {
             blockPollingExecutor.awaitTermination(MAX_SHUTDOWN_MINUTES, TimeUnit.MINUTES);
+            catchUpExecutor.shutdown();
+            // wait until blocks already fetched go through all the stages
+            enrichStage.join();
             cleanerExecutor.awaitTermination(MAX_SHUTDOWN_MINUTES, TimeUnit.MINUTES);
         } catch (InterruptedException e) {
             appLogger.error("Error shutting down blocks manager");
         }
     }
 
-    public void processNewBlock(Json newBlockJson) {
-        logger.debug(String.format("New block arrived with hash [%s]", newBlockJson.string("hash")));
-        Block newBlock = new Block();
-        newBlock.fromGethJson(newBlockJson);
+    /**
+     * Walks the chain from the head using the parent hashes until a known block is found. It has to be called
+     * while holding the lock.
+     *
+     * @param head the last block in the network
+     */
+    private void processBlocksFromHead(Json head) {
+        List<Json> newBlocks = new ArrayList<>();
+        Json lastBlock = head;
+        newBlocks.add(lastBlock);
+        String parentHash = lastBlock.string("parentHash");
+        // it can happen that the endpoint gets behind, and we need to process many blocks at the same time
+        // we will do this for a maximum of 360 blocks, which would be like an hour
+        while (!lastBlocksHashes.contains(parentHash) && newBlocks.size() < MAX_BLOCKS_DELAY) {
+            appLogger.info(String.format("Getting block [%s] from ethereum network", parentHash));
+            lastBlock = getBlockByHash(parentHash);
+            if (lastBlock == null) {
+                appLogger.warn("There were some issues polling for new blocks. We will retry in [" + pollingWaitTime + "] milliseconds");
+                return;
+            }
+            newBlocks.add(lastBlock);
+            parentHash = lastBlock.string("parentHash");
+        }
+        Collections.reverse(newBlocks);
+        processNewBlocks(newBlocks);
+    }
+
+    /**
+     * Takes what is needed to fetch the blocks between the last processed block and the given head, so they can be
+     * fetched without holding the lock. It has to be called while holding the lock.
+     *
+     * @param head the last block in the network
+     * @return the blocks to fetch, or <code>null</code> if there are not enough blocks to fetch them by number
+     */
+    private CatchUp prepareCatchUp(Json head) {
+        long headNumber = getBlockNumber(head);
+        if (lastProcessedBlockNumber < 0 || headNumber - lastProcessedBlockNumber < 2) {
+            return null;
+        }
+        // same as when walking the chain, we don't go further than the maximum delay
+        long fromNumber = Math.max(lastProcessedBlockNumber + 1, headNumber - MAX_BLOCKS_DELAY + 1);
+        return new CatchUp(head, headNumber, fromNumber, lastProcessedBlockHash, fromNumber > lastProcessedBlockNumber + 1, pollGeneration);
+    }
+
+    /**
+     * Fetches the blocks of a catch-up by number, using batches in parallel. The chain is verified using the parent
+     * hashes, so if a reorganization happens while blocks are fetched this returns <code>null</code> and the caller
+     * should walk the chain from the head instead. It doesn't use the state of the manager, so it doesn't need the lock.
+     *
+     * @param catchUp the blocks to fetch
+     * @return the missing blocks from older to newer, without including the head
+     */
+    private List<Json> getMissingBlocks(CatchUp catchUp) throws InterruptedException {
+        appLogger.info(String.format("Getting blocks from [%s] to [%s] from ethereum network", catchUp.fromNumber, catchUp.headNumber - 1));
+        List<Future<List<Json>>> futures = new ArrayList<>();
+        for (long from = catchUp.fromNumber; from < catchUp.headNumber; from += EthereumApiHelper.MAX_BATCH_SIZE) {
+            List<Long> numbers = new ArrayList<>();
+            for (long number = from; number < Math.min(from + EthereumApiHelper.MAX_BATCH_SIZE, catchUp.headNumber); number++) {
+                numbers.add(number);
+            }
+            futures.add(catchUpExecutor.submit(() -> ethereumApiHelper.getBlocksByNumber(numbers, false)));
+        }
+        List<Json> blocks = new ArrayList<>();
+        for (Future<List<Json>> future : futures) {
+            try {
+                blocks.addAll(future.get());
+            } catch (ExecutionException e) {
+                logger.warn(String.format("Error getting blocks by number: [%s]", e.getMessage()), e);
+                return null;
+            }
+        }
+        // verify that all blocks are linked up to the head
+        String expectedParentHash = catchUp.truncated ? null : catchUp.lastProcessedBlockHash;
+        for (Json block : blocks) {
+            if (block == null || (expectedParentHash != null && !StringUtils.equals(expectedParentHash, block.string("parentHash")))) {
+                logger.info("Blocks fetched by number are not linked, walking the chain from the head instead");
+                return null;
+            }
+            expectedParentHash = block.string(Block.HASH);
+        }
+        if (!StringUtils.equals(expectedParentHash, catchUp.head.string("parentHash"))) {
+            logger.info("Blocks fetched by number are not linked to the head, walking the chain from the head instead");
+            return null;
+        }
+        return blocks;
+    }
+
+    private long getBlockNumber(Json block) {
+        // blocks from the network have the number in hexadecimal while the ones in the data store are in decimal
+        String number = block.string(Block.NUMBER);
+        return number.startsWith("0x") ? EthereumHelper.convertedHexToNumber(number) : Long.parseLong(number);
+    }
+
+    /**
+     * Returns the number of pending tasks in each stage of the pipeline. Each task is a group of blocks
+     * fetched together.
+     */
+    public Json getPipelineQueueSizes() {
+        return Json.map()
+                .set("enrich", enrichStage.getQueue().size())
+                .set("persist", persistStage.getQueue().size())
+                .set("dispatch", dispatchStage.getQueue().size());
+    }
+
+    /**
+     * Goes back to the last persisted block if a block couldn't be persisted since the last poll. Tasks created
+     * from now on get the new generation, so the persist stage discards the ones fetched before the rollback.
+     */
+    private void applyPendingRollback() {
+        synchronized (rollbackLock) {
+            if (rollbackPending) {
+                // the persist stage doesn't change its state until tasks of the new generation arrive
+                lastProcessedBlockHash = lastPersistedBlockHash;
+                lastProcessedBlockNumber = lastPersistedBlockNumber;
+                lastBlocksHashes.clear();
+                lastBlocksHashes.addAll(lastPersistedBlocksHashes);
+                rollbackPending = false;
+                appLogger.info(String.format("Blocks will be fetched again from block [%s]", lastProcessedBlockNumber));
+            }
+            pollGeneration = generation;
+        }
+    }
+
+    private void requestRollback() {
+        synchronized (rollbackLock) {
+            generation++;
+            rollbackPending = true;
+        }
+    }
+
+    private void initPipeline() {
+        // processors of the stages never throw: the pipeline doesn't forward a task that fails, so a stage that
+        // preserves the order would wait for it forever
+        enrichStage = new ExecutorPipeline<List<BlockTask>, List<BlockTask>>(enrichThreads, pipelineQueueSize, true, tasks -> {
+            // let listeners fetch what they need for all the blocks at once
+            List<BlockContext> contexts = new ArrayList<>();
+            for (BlockTask task : tasks) {
+                contexts.add(task.context);
+            }
+            try {
+                callbacks.onBlocksFetched(contexts);
+            } catch (Exception e) {
+                // this is just an optimization, listeners will fetch what is missing when blocks are dispatched
+                logger.warn(String.format("Error enriching new blocks: [%s]", e.getMessage()), e);
+            }
+            return tasks;
+        }, e -> {
+            appLogger.error(String.format("Error processing new blocks: [%s]", e.getMessage()));
+            logger.error(String.format("Error processing new blocks: [%s]", e.getMessage()), e);
+        }).setThreadPoolName("blocks-enrich");
+        // with a single thread tasks are already processed in order, so there is no need to preserve it
+        persistStage = enrichStage.add(1, pipelineQueueSize, false, tasks -> {
+            List<BlockTask> persistedTasks = new ArrayList<>();
+            for (BlockTask task : tasks) {
+                if (task.generation != generation) {
+                    // a previous block couldn't be persisted, this one will be fetched again after it
+                    continue;
+                }
+                try {
+                    persistBlock(task);
+                    persistedTasks.add(task);
+                } catch (Exception e) {
+                    appLogger.error(String.format("Error saving block [%s], it will be fetched again: [%s]", task.context.getNumber(), e.getMessage()));
+                    logger.error(String.format("Error saving block [%s]: [%s]", task.context.getNumber(), e.getMessage()), e);
+                    requestRollback();
+                }
+            }
+            return persistedTasks;
+        }).setThreadPoolName("blocks-persist");
+        dispatchStage = persistStage.add(1, pipelineQueueSize, tasks -> {
+            for (BlockTask task : tasks) {
+                try {
+                    for (Block removedBlock : task.removedBlocks) {
+                        callbacks.onRemovedBlock(removedBlock);
+                    }
+                    callbacks.onNewBlock(task.context);
+                } catch (Exception e) {
+                    // the block is already persisted, so we continue with the next ones
+                    appLogger.error(String.format("Error processing block [%s]: [%s]", task.context.getNumber(), e.getMessage()));
+                    logger.error(String.format("Error processing block [%s]: [%s]", task.context.getNumber(), e.getMessage()), e);
+                }
+                lastDispatchedBlockNumber = task.context.getNumber();
+                metrics.recordLatency("blocks.pipeline", System.nanoTime() - task.createdAt);
+            }
+        }).setThreadPoolName("blocks-dispatch");
+    }
+
+    private void processNewBlocks(List<Json> newBlocksJson) {
+        List<BlockTask> tasks = new ArrayList<>();
+        for (Json newBlockJson : newBlocksJson) {
+            Block newBlock = new Block();
+            newBlock.fromGethJson(newBlockJson);
+            tasks.add(processNewBlock(newBlock));
+        }
+        // this blocks if the pipeline is full
+        enrichStage.push(tasks);
+    }
+
+    private BlockTask processNewBlock(Block newBlock) {
+        logger.debug(String.format("New block arrived with hash [%s]", newBlock.getHash()));
+        BlockTask task = new BlockTask(new BlockContext(newBlock), pollGeneration);
         // check if the parent doesn't match with the last block, which means a chain reorganization happened
         // we also check that the parent is in the last blocks, otherwise it means we just got behind for too long
         if (lastProcessedBlockHash != null && !StringUtils.equals(newBlock.getParentHash(), lastProcessedBlockHash) && lastBlocksHashes.contains(newBlock.getParentHash())) {
-            reorganizeChain(newBlock);
+            // blocks after the common parent are removed from the data store when the task is persisted,
+            // here we only need to forget them so the next blocks are linked to the new chain
+            forgetBlocksAfter(lastBlocksHashes, newBlock.getParentHash());
+            task.chainReorganized = true;
         }
-        blocksDs.save(newBlock.toJson());
         lastProcessedBlockHash = newBlock.getHash();
+        lastProcessedBlockNumber = newBlock.getNumber();
         lastBlocksHashes.add(lastProcessedBlockHash);
-        callbacks.onNewBlock(newBlock);
+        return task;
     }
 
-    private void reorganizeChain(Block newBlock) {
+    private void forgetBlocksAfter(EvictingQueue<String> blocksHashes, String parentHash) {
+        List<String> hashes = new ArrayList<>(blocksHashes);
+        blocksHashes.clear();
+        for (String hash : hashes) {
+            blocksHashes.add(hash);
+            if (StringUtils.equals(hash, parentHash)) {
+                break;
+            }
+        }
+    }
+
+    private void persistBlock(BlockTask task) {
+        Block newBlock = task.context.getBlock();
+        if (task.chainReorganized) {
+            reorganizeChain(task);
+        }
+        blocksDs.save(newBlock.toJson());
+        blocksRetention.blockSaved(newBlock.getNumber());
+        // the chain state only moves forward once the block is in the data store
+        if (task.chainReorganized) {
+            forgetBlocksAfter(lastPersistedBlocksHashes, newBlock.getParentHash());
+        }
+        lastPersistedBlockHash = newBlock.getHash();
+        lastPersistedBlockNumber = newBlock.getNumber();
+        lastPersistedBlocksHashes.add(lastPersistedBlockHash);
+    }
+
+    private void reorganizeChain(BlockTask task) {
+        Block newBlock = task.context.getBlock();
         List<Json> blocks = getLastBlocksInDs();
         for (int i = 0; i < blocks.size(); i++) {
             Json block = blocks.get(i);
@@ -152,18 +457,31 @@ public class BlocksManager {
             blocksDs.update(block);
             Block removedBlock = new Block();
             removedBlock.fromJson(block);
-            callbacks.onRemovedBlock(removedBlock);
+            task.removedBlocks.add(removedBlock);
         }
-        initLastBlocks();
     }
 
     private void initLastBlocks() {
         lastProcessedBlockHash = null;
+        lastProcessedBlockNumber = -1;
         lastBlocksHashes.clear();
         List<Json> blocks = getLastBlocksInDs();
         if (blocks.isEmpty()) {
             Json lastBlock = getLastBlock();
             blocks.add(lastBlock);
+            long lastBlockNumber = EthereumHelper.convertedHexToNumber(lastBlock.string(Block.NUMBER));
+            List<Long> numbers = new ArrayList<>();
+            for (long number = lastBlockNumber - 1; number > lastBlockNumber - MAX_BLOCKS && number >= 0; number--) {
+                numbers.add(number);
+            }
+            // fetch the parents all at once; if some of them are missing we go back to walking the chain
+            for (Json parentBlock : ethereumApiHelper.getBlocksByNumber(numbers, false)) {
+                if (parentBlock == null || !StringUtils.equals(parentBlock.string(Block.HASH), lastBlock.string("parentHash"))) {
+                    break;
+                }
+                blocks.add(parentBlock);
+                lastBlock = parentBlock;
+            }
             while (blocks.size() < MAX_BLOCKS) {
                 lastBlock = getBlockByHash(lastBlock.string("parentHash"));
                 blocks.add(lastBlock);
@@ -172,8 +490,15 @@ public class BlocksManager {
         Collections.reverse(blocks);
         for (Json block : blocks) {
             lastProcessedBlockHash = block.string(Block.HASH);
+            lastProcessedBlockNumber = getBlockNumber(block);
             lastBlocksHashes.add(lastProcessedBlockHash);
         }
+        // blocks loaded at startup were already processed
+        lastDispatchedBlockNumber = lastProcessedBlockNumber;
+        lastPersistedBlockHash = lastProcessedBlockHash;
+        lastPersistedBlockNumber = lastProcessedBlockNumber;
+        lastPersistedBlocksHashes.clear();
+        lastPersistedBlocksHashes.addAll(lastBlocksHashes);
     }
 
     private List<Json> getLastBlocksInDs() {
@@ -197,4 +522,36 @@ public class BlocksManager {
         return ethereumApiHelper.getBlockByNumber("latest", false);
     }
 
+    private static class CatchUp {
+        private final Json head;
+        private final long headNumber;
+        private final long fromNumber;
+        // the last processed block when the catch-up was prepared, blocks have to be linked to it
+        private final String lastProcessedBlockHash;
+        // true if it doesn't start right after the last processed block because it is too far behind
+        private final boolean truncated;
+        private final long generation;
+
+        CatchUp(Json head, long headNumber, long fromNumber, String lastProcessedBlockHash, boolean truncated, long generation) {
+            this.head = head;
+            this.headNumber = headNumber;
+            this.fromNumber = fromNumber;
+            this.lastProcessedBlockHash = lastProcessedBlockHash;
+            this.truncated = truncated;
+            this.generation = generation;
+        }
+    }
+
+    private static class BlockTask {
+        private final BlockContext context;
+        private final List<Block> removedBlocks = new ArrayList<>();
+        private boolean chainReorganized = false;
+        private final long createdAt = System.nanoTime();
+        private final long generation;
+
+        BlockTask(BlockContext context, long generation) {
+            this.context = context;
+            this.generation = generation;
+        }
+    }
 }
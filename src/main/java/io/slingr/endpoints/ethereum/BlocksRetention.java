@@ -0,0 +1,106 @@
+package io.slingr.endpoints.ethereum;
+
+import io.slingr.endpoints.services.AppLogs;
+import io.slingr.endpoints.services.datastores.DataStore;
+import io.slingr.endpoints.services.datastores.DataStoreResponse;
+import io.slingr.endpoints.utils.Json;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Removes old blocks from the data store. Blocks below the retention threshold are removed with one filtered
+ * remove on the indexed numeric number. It keeps a watermark with the threshold of the last run, so runs with
+ * nothing new to remove don't hit the data store.
+ * <p>
+ * Blocks saved before the numeric number was stored don't match that filter, so until they are gone each run
+ * also goes through the stored blocks. To keep runs short, a run reads a bounded number of pages
+ * and the next run goes on from the beginning, where the blocks already removed are not found anymore.
+ * <p>
+ * It doesn't share any lock with the polling of blocks: it only reads the number of the last saved block,
+ * and blocks below the threshold are never touched by the reorganization logic. The scan only reads pages and
+ * removes ids below the threshold, so it can run while new blocks are saved.
+ */
+public class BlocksRetention {
+    private static final Logger logger = LoggerFactory.getLogger(BlocksRetention.class);
+
+    private final int PAGE_SIZE = 500;
+    private static final int MAX_PAGES_TO_SCAN = 20;
+
+    private final DataStore blocksDs;
+    private final AppLogs appLogger;
+    private final int blocksToKeep;
+
+    private volatile long lastSavedBlockNumber = -1;
+    private long watermark = -1;
+    private boolean scanPending = true;
+
+    public BlocksRetention(DataStore blocksDs, AppLogs appLogger, int blocksToKeep) {
+        this.blocksDs = blocksDs;
+        this.appLogger = appLogger;
+        this.blocksToKeep = blocksToKeep;
+    }
+
+    public void blockSaved(long blockNumber) {
+        lastSavedBlockNumber = Math.max(lastSavedBlockNumber, blockNumber);
+    }
+
+    public void clean() {
+        long lastNumber = lastSavedBlockNumber;
+        if (lastNumber < 0) {
+            appLogger.info("There are no blocks to remove");
+            return;
+        }
+        long threshold = lastNumber - blocksToKeep + 1;
+        if (watermark >= threshold && !scanPending) {
+            appLogger.info("There are no blocks to remove");
+            return;
+        }
+        // blocks replaced by a chain reorganization have the same numbers, so all of them are removed
+        blocksDs.remove(Json.map().set(Block.NUMBER_VALUE, Json.map().set("$lt", threshold)));
+        if (scanPending) {
+            long removed = removeByScan(threshold);
+            logger.info(String.format("Removed [%s] blocks with numbers lower than [%s] by scanning the stored blocks", removed, threshold));
+        }
+        appLogger.info(String.format("Removed blocks with numbers lower than [%s]", threshold));
+        watermark = threshold;
+    }
+
+    private long removeByScan(long threshold) {
+        logger.info(String.format("Scanning stored blocks to remove the ones lower than [%s]", threshold));
+        long removed = 0;
+        boolean legacyBlocksKept = false;
+        int pages = 0;
+        DataStoreResponse res = blocksDs.find(null, null, PAGE_SIZE);
+        while (res.getItems().size() > 0) {
+            if (++pages > MAX_PAGES_TO_SCAN) {
+                // the next run goes on with the rest
+                logger.info(String.format("Scanned [%s] pages of stored blocks, the rest will be scanned in the next run", MAX_PAGES_TO_SCAN));
+                return removed;
+            }
+            List<String> idsToRemove = new ArrayList<>();
+            for (Json block : res.getItems()) {
+                if (Long.parseLong(block.string(Block.NUMBER)) < threshold) {
+                    idsToRemove.add(block.string("_id"));
+                } else if (block.isEmpty(Block.NUMBER_VALUE)) {
+                    legacyBlocksKept = true;
+                }
+            }
+            if (!idsToRemove.isEmpty()) {
+                // all the blocks of the page are removed at once
+                Json ids = Json.list();
+                for (String id : idsToRemove) {
+                    ids.push(id);
+                }
+                blocksDs.remove(Json.map().set("_id", Json.map().set("$in", ids)));
+            }
+            removed += idsToRemove.size();
+            res = blocksDs.find(null, res.getOffset(), PAGE_SIZE);
+        }
+        // once the whole store was read, only blocks without the numeric number need more scans
+        scanPending = legacyBlocksKept;
+        return removed;
+    }
+}
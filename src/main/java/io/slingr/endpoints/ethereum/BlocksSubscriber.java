@@ -0,0 +1,152 @@
+package io.slingr.endpoints.ethereum;
+
+import io.slingr.endpoints.services.AppLogs;
+import io.slingr.endpoints.utils.Json;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Subscribes to new heads through the WebSocket interface of the node. Every time a new head arrives
+ * the listener is notified, so blocks are processed right away instead of waiting for the next poll.
+ * <p>
+ * If the connection is lost it reconnects in background; while it is disconnected {@link #isConnected()}
+ * returns <code>false</code> so the blocks manager can go back to polling.
+ */
+public class BlocksSubscriber {
+    private static final Logger logger = LoggerFactory.getLogger(BlocksSubscriber.class);
+
+    private final int RECONNECT_WAIT_TIME_SECONDS = 30;
+    private final int MAX_SHUTDOWN_MINUTES = 5;
+
+    private final String wsUrl;
+    private final Runnable newHeadListener;
+    private final AppLogs appLogger;
+
+    private ScheduledExecutorService reconnectExecutor;
+    // it is replaced by the reconnect thread and read from the callbacks of the WebSocket threads
+    private volatile WebSocketClient client;
+    // when a connection cannot be established both onClose() and connect() report it, only one attempt is scheduled
+    private final AtomicBoolean reconnectScheduled = new AtomicBoolean(false);
+    private volatile boolean connected = false;
+    private volatile boolean stopped = false;
+    private volatile String subscriptionId = null;
+
+    public BlocksSubscriber(String wsUrl, Runnable newHeadListener, AppLogs appLogger) {
+        this.wsUrl = wsUrl;
+        this.newHeadListener = newHeadListener;
+        this.appLogger = appLogger;
+    }
+
+    public void start() {
+        reconnectExecutor = Executors.newSingleThreadScheduledExecutor();
+        reconnectExecutor.execute(this::connect);
+    }
+
+    public void shutdown() {
+        stopped = true;
+        reconnectExecutor.shutdown();
+        try {
+            if (client != null) {
+                client.closeBlocking();
+            }
+            reconnectExecutor.awaitTermination(MAX_SHUTDOWN_MINUTES, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            appLogger.error("Error shutting down blocks subscriber");
+        }
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    private void connect() {
+        if (stopped) {
+            return;
+        }
+        reconnectScheduled.set(false);
+        try {
+            client = new WebSocketClient(new URI(wsUrl)) {
+                @Override
+                public void onOpen(ServerHandshake handshake) {
+                    logger.info(String.format("Connected to [%s], subscribing to new heads", wsUrl));
+                    send(Json.map()
+                            .set("id", 1)
+                            .set("jsonrpc", "2.0")
+                            .set("method", "eth_subscribe")
+                            .set("params", Json.list().push("newHeads"))
+                            .toString());
+                }
+
+                @Override
+                public void onMessage(String message) {
+                    processMessage(message);
+                }
+
+                @Override
+                public void onClose(int code, String reason, boolean remote) {
+                    if (this != client) {
+                        // a client that was already replaced
+                        return;
+                    }
+                    onDisconnected(String.format("connection closed with code [%s] and reason [%s]", code, reason));
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    logger.error(String.format("Error in WebSocket connection to [%s]", wsUrl), e);
+                }
+            };
+            // if the connection cannot be established onClose() is called too; only one of them schedules a new attempt
+            if (!client.connectBlocking()) {
+                onDisconnected("connection could not be established");
+            }
+        } catch (Exception e) {
+            logger.error(String.format("Error connecting to [%s]", wsUrl), e);
+            onDisconnected(e.getMessage());
+        }
+    }
+
+    private void processMessage(String message) {
+        try {
+            Json json = Json.parse(message);
+            if ("eth_subscription".equals(json.string("method"))) {
+                Json params = json.json("params");
+                if (params != null && subscriptionId != null && subscriptionId.equals(params.string("subscription"))) {
+                    newHeadListener.run();
+                }
+            } else if (json.string("result") != null) {
+                subscriptionId = json.string("result");
+                connected = true;
+                appLogger.info("Subscribed to new blocks through WebSocket, polling is not needed anymore");
+            } else if (json.json("error") != null) {
+                appLogger.warn(String.format("Error subscribing to new blocks: [%s]", json.json("error").string("message")));
+                client.close();
+            }
+        } catch (Exception e) {
+            logger.error(String.format("Error processing message [%s]", message), e);
+        }
+    }
+
+    private void onDisconnected(String cause) {
+        boolean wasConnected = connected;
+        connected = false;
+        subscriptionId = null;
+        if (stopped) {
+            return;
+        }
+        if (wasConnected) {
+            appLogger.warn(String.format("WebSocket subscription lost: [%s], falling back to polling", cause));
+        }
+        if (reconnectScheduled.compareAndSet(false, true) && !reconnectExecutor.isShutdown()) {
+            reconnectExecutor.schedule(this::connect, RECONNECT_WAIT_TIME_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+}
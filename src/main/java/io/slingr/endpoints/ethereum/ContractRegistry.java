@@ -0,0 +1,151 @@
+package io.slingr.endpoints.ethereum;
+
+import io.slingr.endpoints.utils.Json;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps in memory the contracts configured in the endpoint and the ones registered dynamically, so they
+ * can be found by address or alias without going to the data store. ABIs are parsed once when the
+ * contract is added, and functions are indexed by name.
+ * <p>
+ * The data store is still the source of truth for dynamic contracts; the endpoint has to keep this
+ * registry in sync when contracts are registered or removed.
+ */
+public class ContractRegistry {
+
+    private final Map<String, Contract> contractsByAddress = new ConcurrentHashMap<>();
+    private final Map<String, Contract> contractsByAlias = new ConcurrentHashMap<>();
+
+    /**
+     * Adds contracts configured in the endpoint. These contracts cannot be removed.
+     */
+    public void addConfiguredContracts(List<Json> contracts) {
+        if (contracts != null) {
+            for (Json contract : contracts) {
+                add(contract, true);
+            }
+        }
+    }
+
+    public void addDynamicContracts(List<Json> contracts) {
+        if (contracts != null) {
+            for (Json contract : contracts) {
+                add(contract, false);
+            }
+        }
+    }
+
+    public synchronized Contract add(Json contractJson, boolean configured) {
+        if (contractJson.object("abi") instanceof String) {
+            contractJson.set("abi", Json.parse(contractJson.string("abi")));
+        }
+        Contract contract = new Contract(contractJson, configured);
+        if (contract.getAddress() != null) {
+            // configured contracts take precedence over dynamic ones, same as when they were looked up
+            Contract existing = contractsByAddress.get(contract.getAddress());
+            if (existing == null || !existing.isConfigured() || configured) {
+                contractsByAddress.put(contract.getAddress(), contract);
+            }
+        }
+        if (StringUtils.isNotBlank(contract.getAlias())) {
+            Contract existing = contractsByAlias.get(contract.getAlias());
+            if (existing == null || !existing.isConfigured() || configured) {
+                contractsByAlias.put(contract.getAlias(), contract);
+            }
+        }
+        return contract;
+    }
+
+    public synchronized Contract remove(Contract contract) {
+        contractsByAddress.remove(contract.getAddress(), contract);
+        if (contract.getAlias() != null) {
+            contractsByAlias.remove(contract.getAlias(), contract);
+        }
+        return contract;
+    }
+
+    /**
+     * Finds a contract by address or alias.
+     *
+     * @param aliasOrAddress the alias or address of the contract
+     * @param isAddress <code>true</code> if it is an address, in which case case is ignored
+     * @return the contract or <code>null</code> if there isn't any contract with that alias or address
+     */
+    public Contract find(String aliasOrAddress, boolean isAddress) {
+        if (aliasOrAddress == null) {
+            return null;
+        }
+        if (isAddress) {
+            return contractsByAddress.get(aliasOrAddress.toLowerCase());
+        }
+        Contract contract = contractsByAlias.get(aliasOrAddress);
+        if (contract == null) {
+            contract = contractsByAlias.get(aliasOrAddress.toLowerCase());
+        }
+        return contract;
+    }
+
+    public int size() {
+        return contractsByAddress.size();
+    }
+
+    public static class Contract {
+        private final Json json;
+        private final String address;
+        private final String alias;
+        private final boolean configured;
+        private final Map<String, Json> functions;
+
+        private Contract(Json json, boolean configured) {
+            this.json = json;
+            this.address = json.string("address") != null ? json.string("address").toLowerCase() : null;
+            this.alias = json.string("alias");
+            this.configured = configured;
+            Map<String, Json> functions = new HashMap<>();
+            Json abi = json.json("abi");
+            if (abi != null) {
+                for (Json definition : abi.jsons()) {
+                    String type = definition.string("type");
+                    // if a function is overloaded the first definition is used, same as the helpers in the app
+                    if ((type == null || "function".equals(type)) && definition.string("name") != null && !functions.containsKey(definition.string("name"))) {
+                        functions.put(definition.string("name"), definition);
+                    }
+                }
+            }
+            this.functions = Collections.unmodifiableMap(functions);
+        }
+
+        public Json toJson() {
+            return json;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        public String getAlias() {
+            return alias;
+        }
+
+        public boolean isConfigured() {
+            return configured;
+        }
+
+        public Json getAbi() {
+            return json.json("abi");
+        }
+
+        /**
+         * Returns the ABI definition of a function, or <code>null</code> if the contract doesn't have it.
+         */
+        public Json getFunction(String name) {
+            return functions.get(name);
+        }
+    }
+}
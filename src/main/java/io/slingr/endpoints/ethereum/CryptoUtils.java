@@ -3,8 +3,6 @@ package io.slingr.endpoints.ethereum;
 import org.apache.commons.codec.binary.Base64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import sun.misc.BASE64Decoder;
-import sun.misc.BASE64Encoder;
 
 import javax.crypto.Cipher;
 import javax.crypto.NoSuchPaddingException;
@@ -12,46 +10,78 @@ import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
 
 /**
+ * Encrypts and decrypts values with a key derived from a password. It can be used from many threads at
+ * the same time: ciphers are not thread-safe, so each thread has its own ones.
+ * <p>
  * Created by dgaviola on 01/08/18.
  */
 public class CryptoUtils {
 
     private static final Logger logger = LoggerFactory.getLogger(CryptoUtils.class);
 
-    private SecretKey secretKey;
-    private Cipher ecipher;
-    private Cipher dcipher;
+    private static final String ALGORITHM = "AES";
+
+    private final SecretKey secretKey;
+    private final ThreadLocal<Cipher> ecipher;
+    private final ThreadLocal<Cipher> dcipher;
+    private final java.util.Base64.Encoder encoder = java.util.Base64.getEncoder();
+    // values encrypted before were encoded in lines of 76 characters, the MIME decoder ignores line breaks
+    private final java.util.Base64.Decoder decoder = java.util.Base64.getMimeDecoder();
 
     public CryptoUtils(String password) throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, InvalidKeySpecException {
         byte[] encodedKey = Base64.decodeBase64(password);
         SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
         PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), encodedKey, 65536, 128);
         SecretKey tmp = factory.generateSecret(spec);
-        this.secretKey = new SecretKeySpec(tmp.getEncoded(), "AES");
-        this.ecipher = Cipher.getInstance("AES");
-        this.dcipher = Cipher.getInstance("AES");
-        this.ecipher.init(Cipher.ENCRYPT_MODE, this.secretKey);
-        this.dcipher.init(Cipher.DECRYPT_MODE, this.secretKey);
+        this.secretKey = new SecretKeySpec(tmp.getEncoded(), ALGORITHM);
+        // ciphers are created here once so configuration errors are thrown when the endpoint starts
+        Cipher encryptCipher = createCipher(Cipher.ENCRYPT_MODE);
+        Cipher decryptCipher = createCipher(Cipher.DECRYPT_MODE);
+        this.ecipher = ThreadLocal.withInitial(() -> createCipherUnchecked(Cipher.ENCRYPT_MODE));
+        this.dcipher = ThreadLocal.withInitial(() -> createCipherUnchecked(Cipher.DECRYPT_MODE));
+        this.ecipher.set(encryptCipher);
+        this.dcipher.set(decryptCipher);
     }
 
     public String encrypt(String plaintext) {
         try {
-            return new BASE64Encoder().encode(ecipher.doFinal(plaintext.getBytes("UTF8")));
+            return encoder.encodeToString(ecipher.get().doFinal(plaintext.getBytes(StandardCharsets.UTF_8)));
         } catch (Exception e) {
+            // the cipher could be in a wrong state, so a new one is created for the next call
+            ecipher.remove();
+            logger.debug(String.format("Error encrypting value: [%s]", e.getMessage()));
             return plaintext;
         }
     }
 
     public String decrypt(String ciphertext) {
         try {
-            return new String(dcipher.doFinal(new BASE64Decoder().decodeBuffer(ciphertext)), "UTF8");
+            return new String(dcipher.get().doFinal(decoder.decode(ciphertext)), StandardCharsets.UTF_8);
         } catch (Exception e) {
+            dcipher.remove();
+            logger.debug(String.format("Error decrypting value: [%s]", e.getMessage()));
             return ciphertext;
         }
     }
-}
\ No newline at end of file
+
+    private Cipher createCipher(int mode) throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException {
+        Cipher cipher = Cipher.getInstance(ALGORITHM);
+        cipher.init(mode, secretKey);
+        return cipher;
+    }
+
+    private Cipher createCipherUnchecked(int mode) {
+        try {
+            return createCipher(mode);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cipher cannot be created", e);
+        }
+    }
+}
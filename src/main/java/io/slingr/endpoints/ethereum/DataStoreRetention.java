@@ -0,0 +1,134 @@
+package io.slingr.endpoints.ethereum;
+
+import io.slingr.endpoints.services.datastores.DataStore;
+import io.slingr.endpoints.services.datastores.DataStoreResponse;
+import io.slingr.endpoints.utils.Json;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Removes old documents from a data store. Filters have all the conditions, including the ranges of
+ * age or block number, and should be backed by an index, so only documents to be removed are loaded.
+ * They are read in pages and the documents of each page are removed at once.
+ * <p>
+ * Documents that filters cannot match, like the ones saved before a field used in the ranges existed, can be
+ * removed by scanning the store. Scans read a limited number of pages in each run.
+ * <p>
+ * It keeps how many documents were removed since the endpoint started and in the last run. A run starts with
+ * {@link #startRun()} and can purge many times.
+ */
+public class DataStoreRetention {
+    private static final Logger logger = LoggerFactory.getLogger(DataStoreRetention.class);
+
+    private final int PAGE_SIZE = 500;
+
+    private final String name;
+    private final DataStore dataStore;
+
+    private final AtomicLong purgedCount = new AtomicLong();
+    private final AtomicLong lastPurgedCount = new AtomicLong();
+
+    public DataStoreRetention(String name, DataStore dataStore) {
+        this.name = name;
+        this.dataStore = dataStore;
+    }
+
+    /**
+     * Starts a new run, so the count of the last run starts again from zero.
+     */
+    public void startRun() {
+        lastPurgedCount.set(0);
+    }
+
+    /**
+     * Removes the documents matching the filters.
+     *
+     * @param filters the filters of the documents to remove; each filter is processed separately
+     * @return the number of removed documents
+     */
+    public long purge(List<Json> filters) {
+        long purged = 0;
+        for (Json filter : filters) {
+            // documents of each page are removed, so the next page is always the first one of the filter
+            DataStoreResponse res = dataStore.find(filter, null, PAGE_SIZE);
+            String previousFirstId = null;
+            while (res.getItems().size() > 0) {
+                String firstId = res.getItems().get(0).string("_id");
+                if (firstId != null && firstId.equals(previousFirstId)) {
+                    logger.warn(String.format("Documents could not be removed from [%s]", name));
+                    break;
+                }
+                previousFirstId = firstId;
+                Json ids = Json.list();
+                for (Json document : res.getItems()) {
+                    ids.push(document.string("_id"));
+                }
+                dataStore.remove(Json.map().set("_id", Json.map().set("$in", ids)));
+                purged += res.getItems().size();
+                res = dataStore.find(filter, null, PAGE_SIZE);
+            }
+        }
+        logger.debug(String.format("[%s] documents removed in [%s]", purged, name));
+        purgedCount.addAndGet(purged);
+        lastPurgedCount.addAndGet(purged);
+        return purged;
+    }
+
+    /**
+     * Goes through the documents matching the filter and removes the ones accepted by the predicate. Documents
+     * are read in pages and at most <code>maxPages</code> pages are read.
+     *
+     * @param filter the filter of the documents to go through, or <code>null</code> for all of them
+     * @param predicate tells if a document has to be removed
+     * @param maxPages the maximum number of pages to read
+     * @return <code>true</code> if all the documents of the filter were read
+     */
+    public boolean purgeByScan(Json filter, Predicate<Json> predicate, int maxPages) {
+        long purged = 0;
+        boolean complete = true;
+        int pages = 0;
+        DataStoreResponse res = dataStore.find(filter, null, PAGE_SIZE);
+        while (res.getItems().size() > 0) {
+            if (++pages > maxPages) {
+                complete = false;
+                break;
+            }
+            List<String> idsToRemove = new ArrayList<>();
+            for (Json document : res.getItems()) {
+                if (predicate.test(document)) {
+                    idsToRemove.add(document.string("_id"));
+                }
+            }
+            if (!idsToRemove.isEmpty()) {
+                Json ids = Json.list();
+                for (String id : idsToRemove) {
+                    ids.push(id);
+                }
+                dataStore.remove(Json.map().set("_id", Json.map().set("$in", ids)));
+                purged += idsToRemove.size();
+            }
+            res = dataStore.find(filter, res.getOffset(), PAGE_SIZE);
+        }
+        logger.debug(String.format("[%s] documents removed in [%s] by scanning [%s] pages", purged, name, pages));
+        purgedCount.addAndGet(purged);
+        lastPurgedCount.addAndGet(purged);
+        return complete;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getPurgedCount() {
+        return purgedCount.get();
+    }
+
+    public long getLastPurgedCount() {
+        return lastPurgedCount.get();
+    }
+}
@@ -6,23 +6,37 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class EthereumApiHelper {
     private static final Logger logger = LoggerFactory.getLogger(EthereumApiHelper.class);
 
+    // nodes and providers limit the size of batches, so bigger batches are split in many requests
+    public static final int MAX_BATCH_SIZE = 100;
+
     private final HttpService httpService;
+    private final Metrics metrics;
+    private final AtomicLong requestId = new AtomicLong(System.currentTimeMillis());
 
     public EthereumApiHelper(HttpService httpService) {
+        this(httpService, new Metrics());
+    }
+
+    public EthereumApiHelper(HttpService httpService, Metrics metrics) {
         this.httpService = httpService;
+        this.metrics = metrics;
     }
 
     public Json getBlockByHash(String blockHash, boolean fullTransactions) {
         Json body = this.getBody("eth_getBlockByHash", Json.list().push(blockHash).push(fullTransactions));
         logger.debug("Get Block by Hash: {} fullTransactions: {}", blockHash, fullTransactions);
         logger.debug("Body: {}", body.toString());
-        Json response = postAndGetResponse(body);
+        Json response = postAndGetResponse(body.string("method"), body);
         return response != null ? response.json("result") : null;
     }
 
@@ -30,7 +44,7 @@ public class EthereumApiHelper {
         Json body = this.getBody("eth_getBlockByNumber", Json.list().push(number).push(fullTransactions));
         logger.debug("Get Block by Number: {} fullTransactions: {}", number, fullTransactions);
         logger.debug("Body: {}", body.toString());
-        Json response = postAndGetResponse(body);
+        Json response = postAndGetResponse(body.string("method"), body);
         return response != null ? response.json("result") : null;
     }
 
@@ -38,32 +52,204 @@ public class EthereumApiHelper {
         Json body = this.getBody("eth_getTransactionReceipt", Json.list().push(txHash));
         logger.debug("Get transaction: {}", txHash);
         logger.debug("Body: {}", body.toString());
-        Json response = postAndGetResponse(body);
+        Json response = postAndGetResponse(body.string("method"), body);
         return response != null ? response.json("result") : null;
     }
 
-    public List<Json> getLogsByBlock(String hash) {
-        Json body = this.getBody("eth_getLogs", Json.list().push(Json.map().set("blockHash", hash)));
+    /**
+     * Returns the number of transactions sent from an account.
+     *
+     * @param address the address of the account
+     * @param block the block number in hexadecimal or <code>latest</code>, <code>pending</code> or <code>earliest</code>
+     * @return the count or <code>null</code> if it couldn't be fetched
+     */
+    public Long getTransactionCount(String address, String block) {
+        Json body = this.getBody("eth_getTransactionCount", Json.list().push(address).push(block));
+        logger.debug("Get transaction count: {} block: {}", address, block);
+        Json response = postAndGetResponse(body.string("method"), body);
+        String count = response != null ? response.string("result") : null;
+        return count != null ? Long.parseLong(count.startsWith("0x") ? count.substring(2) : count, 16) : null;
+    }
+
+    /**
+     * Sends a signed transaction to the network.
+     *
+     * @param data the signed transaction, RLP-encoded
+     * @return the response of the node, with the hash in <code>result</code> or the reason why the transaction
+     * wasn't accepted in <code>error</code>; <code>null</code> if there was no response
+     */
+    public Json sendRawTransaction(String data) {
+        Json body = this.getBody("eth_sendRawTransaction", Json.list().push(data));
+        logger.debug("Send raw transaction");
+        return postAndGetResponse(body.string("method"), body);
+    }
+
+    public List<Json> getLogsByBlock(String hash, Json filter) {
+        Json body = this.getBody("eth_getLogs", Json.list().push(getLogsFilter(filter).set("blockHash", hash)));
         logger.debug("Get logs by block: {}", hash);
         logger.debug("Body: {}", body.toString());
-        Json response = postAndGetResponse(body);
+        Json response = postAndGetResponse(body.string("method"), body);
         return response != null && response.jsons("result") != null ? response.jsons("result") : new ArrayList<>();
     }
 
-    private Json getBody(String method, Json params) {
+    /**
+     * Fetches the logs of a range of blocks in one request.
+     *
+     * @param fromNumber the number of the first block
+     * @param toNumber the number of the last block (inclusive)
+     * @param filter the filter with <code>address</code> and <code>topics</code>; it can be <code>null</code>
+     * @return the logs or <code>null</code> if there was an error, like too many logs in the range
+     */
+    public List<Json> getLogsByRange(long fromNumber, long toNumber, Json filter) {
+        Json params = getLogsFilter(filter)
+                .set("fromBlock", EthereumHelper.convertNumberToHex(fromNumber))
+                .set("toBlock", EthereumHelper.convertNumberToHex(toNumber));
+        Json body = this.getBody("eth_getLogs", Json.list().push(params));
+        logger.debug("Get logs from block [{}] to [{}]", fromNumber, toNumber);
+        logger.debug("Body: {}", body.toString());
+        Json response = postAndGetResponse(body.string("method"), body);
+        if (response == null || response.json("error") != null) {
+            logger.warn("Error getting logs from block [{}] to [{}]: {}", fromNumber, toNumber, response != null ? response.json("error").toString() : null);
+            return null;
+        }
+        return response.jsons("result") != null ? response.jsons("result") : new ArrayList<>();
+    }
+
+    /**
+     * Fetches many blocks by number in batched requests.
+     *
+     * @param numbers the numbers of the blocks to fetch
+     * @param fullTransactions if transactions should be returned or only their hashes
+     * @return the blocks in the same order as the numbers; blocks that could not be fetched are <code>null</code>
+     */
+    public List<Json> getBlocksByNumber(List<Long> numbers, boolean fullTransactions) {
+        List<Json> bodies = new ArrayList<>();
+        for (Long number : numbers) {
+            bodies.add(this.getBody("eth_getBlockByNumber", Json.list().push(EthereumHelper.convertNumberToHex(number)).push(fullTransactions)));
+        }
+        logger.debug("Get [{}] blocks by number fullTransactions: {}", numbers.size(), fullTransactions);
+        List<Json> responses = postBatch(bodies);
+        List<Json> blocks = new ArrayList<>();
+        for (Json response : responses) {
+            blocks.add(response != null ? response.json("result") : null);
+        }
+        return blocks;
+    }
+
+    /**
+     * Fetches the receipts of many transactions in batched requests.
+     *
+     * @param txHashes the hashes of the transactions
+     * @return a map from transaction hash to receipt; transactions without receipt are not in the map
+     */
+    public Map<String, Json> getTransactionReceipts(Collection<String> txHashes) {
+        List<String> hashes = new ArrayList<>(txHashes);
+        List<Json> bodies = new ArrayList<>();
+        for (String txHash : hashes) {
+            bodies.add(this.getBody("eth_getTransactionReceipt", Json.list().push(txHash)));
+        }
+        logger.debug("Get [{}] transaction receipts", hashes.size());
+        List<Json> responses = postBatch(bodies);
+        Map<String, Json> receipts = new HashMap<>();
+        for (int i = 0; i < hashes.size(); i++) {
+            Json response = responses.get(i);
+            if (response != null && response.json("result") != null) {
+                receipts.put(hashes.get(i), response.json("result"));
+            }
+        }
+        return receipts;
+    }
+
+    /**
+     * Fetches the logs of many blocks in batched requests.
+     *
+     * @param hashes the hashes of the blocks
+     * @param filter the filter with <code>address</code> and <code>topics</code>; it can be <code>null</code>
+     * @return a map from block hash to its logs; blocks whose logs could not be fetched are not in the map
+     */
+    public Map<String, List<Json>> getLogsByBlocks(List<String> hashes, Json filter) {
+        List<Json> bodies = new ArrayList<>();
+        for (String hash : hashes) {
+            bodies.add(this.getBody("eth_getLogs", Json.list().push(getLogsFilter(filter).set("blockHash", hash))));
+        }
+        logger.debug("Get logs of [{}] blocks", hashes.size());
+        List<Json> responses = postBatch(bodies);
+        Map<String, List<Json>> logs = new LinkedHashMap<>();
+        for (int i = 0; i < hashes.size(); i++) {
+            Json response = responses.get(i);
+            if (response != null && response.json("error") == null) {
+                logs.put(hashes.get(i), response.jsons("result") != null ? response.jsons("result") : new ArrayList<>());
+            }
+        }
+        return logs;
+    }
+
+    /**
+     * Sends many JSON-RPC requests using batches as defined in the JSON-RPC 2.0 specification. Requests
+     * are split in batches of at most {@link #MAX_BATCH_SIZE} and responses are matched back using the id.
+     *
+     * @param bodies the JSON-RPC requests built with {@link #getBody(String, Json)}
+     * @return the responses in the same order as the requests; if a response is missing it will be <code>null</code>
+     */
+    public List<Json> postBatch(List<Json> bodies) {
+        List<Json> responses = new ArrayList<>();
+        for (int from = 0; from < bodies.size(); from += MAX_BATCH_SIZE) {
+            List<Json> batch = bodies.subList(from, Math.min(from + MAX_BATCH_SIZE, bodies.size()));
+            Json batchBody = Json.list();
+            for (Json body : batch) {
+                batchBody.push(body);
+            }
+            logger.debug("Batch body with [{}] requests", batch.size());
+            Map<Long, Json> responsesById = new HashMap<>();
+            // batches have requests of the same method, the latency is recorded for the whole batch
+            Json response = postAndGetResponse("batch." + batch.get(0).string("method"), batchBody);
+            List<Json> items = response != null ? response.jsons() : null;
+            if (items != null) {
+                for (Json item : items) {
+                    if (item.longInteger("id") != null) {
+                        responsesById.put(item.longInteger("id"), item);
+                    }
+                }
+            }
+            for (Json body : batch) {
+                Json item = responsesById.get(body.longInteger("id"));
+                if (item != null && item.json("error") != null) {
+                    logger.warn("Error in batch request [{}]: {}", body.toString(), item.json("error").toString());
+                }
+                responses.add(item);
+            }
+        }
+        return responses;
+    }
+
+    private Json getLogsFilter(Json filter) {
+        Json params = Json.map();
+        if (filter != null) {
+            for (String key : filter.keys()) {
+                params.set(key, filter.object(key));
+            }
+        }
+        return params;
+    }
+
+    public Json getBody(String method, Json params) {
         return Json.map()
-                .set("id", new Date().getTime())
+                .set("id", requestId.incrementAndGet())
                 .set("jsonrpc", "2.0")
                 .set("method", method)
                 .set("params", params);
     }
 
-    private Json postAndGetResponse(Json body) {
+    private Json postAndGetResponse(String method, Json body) {
+        long start = System.nanoTime();
         try {
             return this.httpService.post(body);
         } catch (Exception e) {
+            metrics.increment("rpc." + method + ".errors");
             logger.error("Error posting json: {}", body.toString());
             logger.error(e.getMessage(), e);
+        } finally {
+            metrics.recordLatency("rpc." + method, System.nanoTime() - start);
         }
         return null;
     }
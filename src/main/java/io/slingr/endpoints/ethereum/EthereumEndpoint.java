@@ -1,5 +1,6 @@
 package io.slingr.endpoints.ethereum;
 
+import com.google.common.cache.CacheStats;
 import io.slingr.endpoints.HttpEndpoint;
 import io.slingr.endpoints.configurations.EndpointContext;
 import io.slingr.endpoints.exceptions.EndpointException;
@@ -19,12 +20,11 @@ import org.spongycastle.util.encoders.Hex;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
-import static org.ethereum.util.ByteUtil.longToBytesNoLeadZeroes;
-
 /**
  * <p>Ethereum endpoint
  * <p>
@@ -69,7 +69,15 @@ public class EthereumEndpoint extends HttpEndpoint {
     private BlocksManager blocksManager;
     private TransactionManager transactionManager;
     private EventsManager eventsManager;
+    private EventDispatcher eventDispatcher;
+    private ContractRegistry contractRegistry;
+    private MultiCaller multiCaller;
     private CryptoUtils cryptoUtils;
+    private SignerCache signerCache;
+    private TransactionSigner transactionSigner;
+    private NonceManager nonceManager;
+    private TransactionSubmitter transactionSubmitter;
+    private Metrics metrics;
 
     private final static String CONFIRMATION_TIMEOUT_PROPERTY = "confirmationTimeout";
     private final static long DEFAULT_CONFIRATION_TIMEOUT = 1800;
@@ -77,6 +85,13 @@ public class EthereumEndpoint extends HttpEndpoint {
     private final static long DEFAULT_CONFIRMATION_BLOCKS = 0;
     public final static String MULTITENANCY_PROPERTY = "shared";
     public final static boolean DEFAULT_MULTITENANCY_PROPERTY = false;
+    private final static String BLOCKS_NOTIFICATIONS_PROPERTY = "blocksNotifications";
+    private final static String BLOCKS_NOTIFICATIONS_WEBSOCKET = "webSocket";
+    private final static String MULTICALL_ADDRESS_PROPERTY = "multicallAddress";
+    private final static String ADDRESS_REGEX = "^(0x)?[0-9a-fA-F]{40}$";
+    private final static String SIGNER_CACHE_TTL_PROPERTY = "signerCacheTtl";
+    private final static long DEFAULT_SIGNER_CACHE_TTL = 600;
+    private final static long SIGNER_CACHE_SIZE = 1000;
 
     private long confirmationTimeout;
     private long confirmationBlocks;
@@ -101,10 +116,30 @@ public class EthereumEndpoint extends HttpEndpoint {
         return networkUrl;
     }
 
+    private String getWsUrl() {
+        if (!BLOCKS_NOTIFICATIONS_WEBSOCKET.equals(configuration.string(BLOCKS_NOTIFICATIONS_PROPERTY))) {
+            // polling is the default
+            return null;
+        }
+        switch (configuration.string("service")) {
+            case "infura":
+                return "wss://" + configuration.string("infuraNetwork") + ".infura.io/ws/v3/" + configuration.string("infuraApiKey");
+            case "custom":
+                if (StringUtils.isBlank(configuration.string("customNodeWsUrl"))) {
+                    appLogger.warn("WebSocket URL of the node is not configured, new blocks will be polled");
+                    return null;
+                }
+                return configuration.string("customNodeWsUrl");
+            default:
+                return null;
+        }
+    }
+
     @Override
     public void endpointStarted() {
         ethereumHelper = new EthereumHelper();
-        ethereumApiHelper = new EthereumApiHelper(httpService());
+        metrics = new Metrics();
+        ethereumApiHelper = new EthereumApiHelper(httpService(), metrics);
         solidityUtils = new SolidityUtils();
         try {
             cryptoUtils = new CryptoUtils(ENCRYPTION_PASSWORD);
@@ -127,18 +162,36 @@ public class EthereumEndpoint extends HttpEndpoint {
             logger.info("Endpoint started as a shared instance");
         }
         this.httpService().setDefaultEmptyPath("");
-
-        transactionManager = new TransactionManager(ethereumApiHelper, events(), appLogger, transactionsDs, configuration);
+        signerCache = new SignerCache(accountsDs, cryptoUtils, SIGNER_CACHE_SIZE, configuration.longInteger(SIGNER_CACHE_TTL_PROPERTY, DEFAULT_SIGNER_CACHE_TTL));
+        transactionSigner = new TransactionSigner(signerCache, ethereumHelper);
+
+        contractRegistry = new ContractRegistry();
+        contractRegistry.addConfiguredContracts(configuration.jsons("contracts"));
+        contractRegistry.addDynamicContracts(contractsDs.find().getItems());
+        appLogger.info(String.format("[%s] contracts were loaded", contractRegistry.size()));
+        multiCaller = new MultiCaller(ethereumApiHelper, ethereumHelper, configuration.string(MULTICALL_ADDRESS_PROPERTY));
+        eventDispatcher = new EventDispatcher(events(), appLogger);
+        eventDispatcher.start();
+        registerMetrics();
+        nonceManager = new NonceManager(ethereumApiHelper, metrics);
+        transactionManager = new TransactionManager(ethereumApiHelper, eventDispatcher, appLogger, transactionsDs, nonceManager, configuration, metrics);
         transactionManager.start();
-        eventsManager = new EventsManager(ethereumApiHelper, events(), appLogger, eventsDs, contractsDs, configuration.jsons("contracts"), confirmationBlocks, configuration);
+        transactionSubmitter = new TransactionSubmitter(ethereumApiHelper, transactionManager, nonceManager, appLogger, configuration, metrics);
+        transactionSubmitter.start();
+        eventsManager = new EventsManager(ethereumApiHelper, eventDispatcher, appLogger, eventsDs, contractsDs, configuration.jsons("contracts"), confirmationBlocks, configuration, metrics);
         eventsManager.start();
         blocksManager = new BlocksManager(ethereumApiHelper, appLogger, blocksDs, new EthereumEvent() {
             @Override
-            public void onNewBlock(Block block) {
+            public void onBlocksFetched(List<BlockContext> blocks) {
+                eventsManager.prefetchLogs(blocks);
+            }
+
+            @Override
+            public void onNewBlock(BlockContext block) {
                 transactionManager.processTransactionsInBlock(block);
                 eventsManager.processEventsInBlock(block);
                 if (!isShared) {
-                    events().send(NEW_BLOCK_EVENT, block.getOriginalBlockInfo());
+                    eventDispatcher.dispatch(Collections.singletonList(new EventDispatcher.Event(NEW_BLOCK_EVENT, block.getBlock().getOriginalBlockInfo(), null)), null);
                 }
             }
 
@@ -147,25 +200,50 @@ public class EthereumEndpoint extends HttpEndpoint {
                 transactionManager.removeTransactionsInBlock(block);
                 eventsManager.removeEventsInBlock(block);
                 if (!isShared) {
-                    events().send(BLOCK_REMOVED_EVENT, block.getOriginalBlockInfo());
+                    eventDispatcher.dispatch(Collections.singletonList(new EventDispatcher.Event(BLOCK_REMOVED_EVENT, block.getOriginalBlockInfo(), null)), null);
                 }
             }
-        }, configuration);
+        }, configuration, getWsUrl(), metrics);
         blocksManager.start();
     }
 
+    private void registerMetrics() {
+        metrics.gauge("dispatcher.queuedBatches", () -> eventDispatcher.getQueueSize());
+        metrics.gauge("dispatcher.sentEvents", () -> eventDispatcher.getSentCount());
+        metrics.gauge("dispatcher.failedEvents", () -> eventDispatcher.getFailedCount());
+        metrics.gauge("functionsCache", () -> {
+            CacheStats stats = EthereumHelper.getFunctionsCacheStats();
+            return Json.map()
+                    .set("hits", stats.hitCount())
+                    .set("misses", stats.missCount())
+                    .set("hitRate", stats.hitRate())
+                    .set("evictions", stats.evictionCount());
+        });
+        metrics.gauge("signerCache", () -> {
+            CacheStats stats = signerCache.getStats();
+            return Json.map()
+                    .set("size", signerCache.size())
+                    .set("hits", stats.hitCount())
+                    .set("misses", stats.missCount())
+                    .set("hitRate", stats.hitRate())
+                    .set("evictions", stats.evictionCount());
+        });
+    }
+
     @Override
     public void endpointStopped(String cause) {
         blocksManager.shutdown();
         eventsManager.shutdown();
+        transactionSubmitter.shutdown();
         transactionManager.shutdown();
+        // events queued by the managers are sent before stopping
+        eventDispatcher.shutdown();
     }
 
     @EndpointFunction(name = "_registerContract")
     public Json registerContract(FunctionRequest request) {
         Json body = request.getJsonParams();
-        Json query = Json.map().set("address", body.string("address").toLowerCase());
-        Json existingContract = contractsDs.findOne(query);
+        ContractRegistry.Contract existingContract = contractRegistry.find(body.string("address"), true);
         if (existingContract != null) {
             throw new IllegalArgumentException("Another contract is already registered on this address");
         }
@@ -174,6 +252,7 @@ public class EthereumEndpoint extends HttpEndpoint {
             body.set("alias", body.string("alias").toLowerCase());
         }
         Json contract = contractsDs.save(body);
+        contractRegistry.add(contract, false);
         eventsManager.registerContract(contract.string("address").toLowerCase(), contract.json("abi"));
         return contract;
     }
@@ -186,48 +265,9 @@ public class EthereumEndpoint extends HttpEndpoint {
         if (aliasOrAddress == null) {
             throw new IllegalArgumentException(String.format("Contract with alias or address [%s] was not found", aliasOrAddress));
         }
-        boolean isAddress = body.bool("isAddress");
-        if (isAddress) {
-            aliasOrAddress = aliasOrAddress.toLowerCase();
-        }
-
-        // find in endpoint's config
-        List<Json> contracts = configuration.jsons("contracts");
-        Json contract = filterContract(isAddress, aliasOrAddress, contracts);
-        if (contract != null) {
-            return contract;
-        }
-
-        // find in dynamic contracts
-
-        String key = isAddress ? "address" : "alias";
-        contract = contractsDs.findOne(Json.map().set(key, aliasOrAddress));
-
-        //TODO: should be removed when filter on data store implement 'OR'
-        if (contract == null) {
-            return contractsDs.findOne(Json.map().set(key, aliasOrAddress.toLowerCase()));
-        }
-
-        return contract;
-    }
-
-    private Json filterContract(boolean isAddress, String addressOrAlias, List<Json> contracts) {
-        if (contracts != null) {
-            for (Json co : contracts) {
-
-                String alias = co.string("alias");
-                String address = co.string("address");
-
-                if (!isAddress && addressOrAlias.equals(alias) ||
-                        isAddress && address != null && addressOrAlias.toLowerCase().equals(address.toLowerCase())) {
-                    if (co.object("abi") instanceof String) {
-                        co.set("abi", Json.parse(co.string("abi")));
-                    }
-                    return co;
-                }
-            }
-        }
-        return null;
+        // configured and dynamic contracts are kept in memory, so there is no need to go to the data store
+        ContractRegistry.Contract contract = contractRegistry.find(aliasOrAddress, body.bool("isAddress"));
+        return contract != null ? contract.toJson() : null;
     }
 
     @EndpointFunction(name = "_removeContract")
@@ -235,32 +275,15 @@ public class EthereumEndpoint extends HttpEndpoint {
         Json body = request.getJsonParams();
         String aliasOrAddress = body.string("alias");
         boolean isAddress = body.bool("isAddress");
-        if (isAddress) {
-            aliasOrAddress = aliasOrAddress.toLowerCase();
-        }
-
-        // find in endpoint's config
-        List<Json> contracts = configuration.jsons("contracts");
-        if (contracts != null) {
-            for (Json co : contracts) {
-                if (!isAddress && aliasOrAddress.equals(co.string("alias")) ||
-                        isAddress && aliasOrAddress.equals(co.string("address").toLowerCase())) {
-                    throw new IllegalArgumentException("This contract is configured in the endpoint and cannot be removed");
-                }
-            }
-        }
-        // find in dynamic contracts
-        String key = isAddress ? "address" : "alias";
-        Json co = contractsDs.findOne(Json.map().set(key, aliasOrAddress));
-
-        //TODO: should be removed when filter on data store implement 'OR'
-        if (co == null) {
-            co = contractsDs.findOne(Json.map().set(key, aliasOrAddress));
-        }
+        ContractRegistry.Contract co = contractRegistry.find(aliasOrAddress, isAddress);
         if (co != null) {
-            eventsManager.removeContract(co.string("address"));
-            contractsDs.remove(Json.map().set(key, aliasOrAddress));
-            return co;
+            if (co.isConfigured()) {
+                throw new IllegalArgumentException("This contract is configured in the endpoint and cannot be removed");
+            }
+            eventsManager.removeContract(co.getAddress());
+            contractsDs.remove(Json.map().set("address", co.getAddress()));
+            contractRegistry.remove(co);
+            return co.toJson();
         }
         throw new IllegalArgumentException(String.format("Contract with alias or address [%s] was not found", aliasOrAddress));
     }
@@ -278,6 +301,65 @@ public class EthereumEndpoint extends HttpEndpoint {
         return ethereumHelper.decodeResult(body.json("fnAbi"), body.string("data"));
     }
 
+    @EndpointFunction(name = "_encodeFunctions")
+    public Json encodeFunctions(FunctionRequest request) {
+        Json body = request.getJsonParams();
+        List<Json> items = body.jsons("items") != null ? body.jsons("items") : new ArrayList<>();
+        Json results = Json.list();
+        for (Json result : ethereumHelper.encodeFunctions(body.json("fnAbi"), items, body.bool("parallel", false))) {
+            results.push(result);
+        }
+        return Json.map().set("results", results);
+    }
+
+    @EndpointFunction(name = "_decodeFunctions")
+    public Json decodeFunctions(FunctionRequest request) {
+        Json body = request.getJsonParams();
+        List<Json> items = body.jsons("items") != null ? body.jsons("items") : new ArrayList<>();
+        Json results = Json.list();
+        for (Json result : ethereumHelper.decodeResults(body.json("fnAbi"), items, body.bool("parallel", false))) {
+            results.push(result);
+        }
+        return Json.map().set("results", results);
+    }
+
+    @EndpointFunction(name = "_multiCall")
+    public Json multiCall(FunctionRequest request) {
+        Json body = request.getJsonParams();
+        List<Json> callsJson = body.jsons("calls") != null ? body.jsons("calls") : new ArrayList<>();
+        String block = StringUtils.isNotBlank(body.string("block")) ? body.string("block") : "latest";
+        // calls that cannot be encoded are not sent, but they keep their place in the results
+        List<MultiCaller.Call> calls = new ArrayList<>();
+        Json[] results = new Json[callsJson.size()];
+        for (int i = 0; i < callsJson.size(); i++) {
+            Json callJson = callsJson.get(i);
+            String aliasOrAddress = callJson.string("aliasOrAddress");
+            boolean isAddress = aliasOrAddress != null && aliasOrAddress.matches(ADDRESS_REGEX);
+            ContractRegistry.Contract contract = contractRegistry.find(aliasOrAddress, isAddress);
+            Json fnDef = contract != null ? contract.getFunction(callJson.string("fnName")) : null;
+            String to = isAddress ? aliasOrAddress : (contract != null ? contract.getAddress() : null);
+            if (to == null) {
+                results[i] = Json.map().set("error", String.format("Contract with alias or address [%s] was not found", aliasOrAddress));
+            } else if (fnDef == null) {
+                results[i] = Json.map().set("error", String.format("Cannot find function [%s] in ABI", callJson.string("fnName")));
+            } else {
+                try {
+                    String data = "0x" + ethereumHelper.encodeFunction(fnDef, callJson.json("params"));
+                    calls.add(new MultiCaller.Call(to, fnDef, data));
+                } catch (Exception e) {
+                    results[i] = Json.map().set("error", String.format("There was a problem encoding params: %s", e.getMessage()));
+                }
+            }
+        }
+        List<Json> callsResults = multiCaller.call(calls, body.string("from"), block);
+        Json response = Json.list();
+        int callIndex = 0;
+        for (Json result : results) {
+            response.push(result != null ? result : callsResults.get(callIndex++));
+        }
+        return Json.map().set("results", response);
+    }
+
     @EndpointFunction(name = "_compileSolidity")
     public Json compileSolidity(FunctionRequest request) {
         Json body = request.getJsonParams();
@@ -289,28 +371,43 @@ public class EthereumEndpoint extends HttpEndpoint {
     @EndpointFunction(name = "_confirmTransaction")
     public Json confirmTransaction(FunctionRequest request) {
         Json body = request.getJsonParams();
-        long confirmationTimeout, confirmationBlocks;
-        if (body.longInteger(CONFIRMATION_TIMEOUT_PROPERTY) != null) {
-            confirmationTimeout = TimeUnit.SECONDS.toMillis(body.longInteger(CONFIRMATION_TIMEOUT_PROPERTY));
-        } else {
-            confirmationTimeout = this.confirmationTimeout;
-        }
-        if (body.integer(CONFIRMATION_BLOCKS_PROPERTY) != null) {
-            confirmationBlocks = body.integer(CONFIRMATION_BLOCKS_PROPERTY);
-        } else {
-            confirmationBlocks = this.confirmationBlocks;
-        }
         long timestamp = new Date().getTime();
         String txHash = body.string(Transaction.TX_HASH);
-        confirmationTimeout = confirmationTimeout + timestamp;
+        long confirmationTimeout = getConfirmationTimeout(body) + timestamp;
         String nonce = body.string(Transaction.NONCE);
         String from = body.string(Transaction.FROM);
-        transactionManager.registerTransaction(txHash, nonce, from, request.getFunctionId(), timestamp, confirmationTimeout, confirmationBlocks);
+        transactionManager.registerTransaction(txHash, nonce, from, request.getFunctionId(), timestamp, confirmationTimeout, getConfirmationBlocks(body));
         Json resp = Json.map();
         resp.set("status", "ok");
         return resp;
     }
 
+    @EndpointFunction(name = "_submitTransactions")
+    public Json submitTransactions(FunctionRequest request) {
+        Json body = request.getJsonParams();
+        List<Json> transactions = body.jsons("transactions") != null ? body.jsons("transactions") : new ArrayList<>();
+        long confirmationTimeout = getConfirmationTimeout(body) + new Date().getTime();
+        Json results = Json.list();
+        for (Json result : transactionSubmitter.submit(transactions, request.getFunctionId(), confirmationTimeout, getConfirmationBlocks(body))) {
+            results.push(result);
+        }
+        return Json.map().set("results", results);
+    }
+
+    private long getConfirmationTimeout(Json body) {
+        if (body.longInteger(CONFIRMATION_TIMEOUT_PROPERTY) != null) {
+            return TimeUnit.SECONDS.toMillis(body.longInteger(CONFIRMATION_TIMEOUT_PROPERTY));
+        }
+        return this.confirmationTimeout;
+    }
+
+    private long getConfirmationBlocks(Json body) {
+        if (body.integer(CONFIRMATION_BLOCKS_PROPERTY) != null) {
+            return body.integer(CONFIRMATION_BLOCKS_PROPERTY);
+        }
+        return this.confirmationBlocks;
+    }
+
     @EndpointFunction(name = "_createAccount")
     public Json createAccount(FunctionRequest request) {
         BigInteger privateKeyInteger;
@@ -355,6 +452,7 @@ public class EthereumEndpoint extends HttpEndpoint {
                 .set("address", address)
                 .set("privateKey", cryptoUtils.encrypt(privateKey));
         accountsDs.save(account);
+        signerCache.invalidate(address);
         return Json.map()
                 .set("address", address);
     }
@@ -373,36 +471,56 @@ public class EthereumEndpoint extends HttpEndpoint {
         if (account != null) {
             account.set("privateKey", cryptoUtils.decrypt(account.string("privateKey")));
         }
+        // once exported the key is outside of the endpoint, so it is loaded again from the data store next time
+        signerCache.invalidate(address);
         return account;
     }
 
     @EndpointFunction(name = "_signTransaction")
     public Json signTransaction(FunctionRequest request) {
         Json body = request.getJsonParams();
-        String fromAddress = body.string("from");
-        if (StringUtils.isBlank(fromAddress)) {
-            throw new IllegalArgumentException("From address must be provided");
+        return Json.map().set("data", transactionSigner.sign(body));
+    }
+
+    @EndpointFunction(name = "_signTransactions")
+    public Json signTransactions(FunctionRequest request) {
+        Json body = request.getJsonParams();
+        List<Json> transactions = body.jsons("transactions") != null ? body.jsons("transactions") : new ArrayList<>();
+        Json results = Json.list();
+        for (Json result : transactionSigner.signAll(transactions, body.bool("parallel", true))) {
+            results.push(result);
+        }
+        return Json.map().set("results", results);
+    }
+
+    @EndpointFunction(name = "_reserveNonce")
+    public Json reserveNonce(FunctionRequest request) {
+        Json body = request.getJsonParams();
+        String address = body.string("address");
+        if (StringUtils.isBlank(address)) {
+            throw new IllegalArgumentException("Address must be provided");
         }
-        if (!fromAddress.startsWith("0x")) {
-            fromAddress = "0x" + fromAddress;
+        return Json.map().set("nonce", "0x" + Long.toHexString(nonceManager.reserve(address)));
+    }
+
+    @EndpointFunction(name = "_releaseNonce")
+    public Json releaseNonce(FunctionRequest request) {
+        Json body = request.getJsonParams();
+        String address = body.string("address");
+        if (StringUtils.isBlank(address) || StringUtils.isBlank(body.string("nonce"))) {
+            throw new IllegalArgumentException("Address and nonce must be provided");
         }
-        Json account = accountsDs.findOne(Json.map().set("address", fromAddress.toLowerCase()));
-        if (account == null) {
-            throw new IllegalArgumentException(String.format("Address [%s] is not managed", fromAddress));
+        nonceManager.release(address, Long.parseUnsignedLong(ethereumHelper.removeHexStringToData(body.string("nonce")), 16));
+        // when the node rejected the transaction the counter could be wrong, so it is taken from the node again
+        if (body.bool("resync", false)) {
+            nonceManager.resync(address);
         }
-        BigInteger privateKeyInteger = new BigInteger(cryptoUtils.decrypt(account.string("privateKey")), 16);
-        ECKey key = ECKey.fromPrivate(privateKeyInteger);
-        org.ethereum.core.Transaction tx = new org.ethereum.core.Transaction(
-                body.isEmpty("nonce") ? null : longToBytesNoLeadZeroes(Long.parseUnsignedLong(ethereumHelper.removeHexStringToData(body.string("nonce")), 16)),
-                body.isEmpty("gasPrice") ? null : longToBytesNoLeadZeroes(Long.parseUnsignedLong(ethereumHelper.removeHexStringToData(body.string("gasPrice")), 16)),
-                body.isEmpty("gas") ? null : longToBytesNoLeadZeroes(Long.parseUnsignedLong(ethereumHelper.removeHexStringToData(body.string("gas")), 16)),
-                body.isEmpty("to") ? null : Hex.decode(ethereumHelper.removeHexStringToData(body.string("to"))),
-                body.isEmpty("value") ? longToBytesNoLeadZeroes(Long.valueOf(0)) : longToBytesNoLeadZeroes(Long.parseUnsignedLong(ethereumHelper.removeHexStringToData(body.string("value")), 16)),
-                body.isEmpty("data") ? null : Hex.decode(ethereumHelper.removeHexStringToData(body.string("data"))),
-                body.integer("netId")
-        );
-        tx.sign(key);
-        return Json.map().set("data", "0x" + Hex.toHexString(tx.getEncoded()));
+        return Json.map().set("status", "ok");
+    }
+
+    @EndpointFunction(name = "_getMetrics")
+    public Json getMetrics(FunctionRequest request) {
+        return metrics.snapshot();
     }
 
     @EndpointFunction(name = "_decodeLogsInReceipt")
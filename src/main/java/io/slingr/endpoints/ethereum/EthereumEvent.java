@@ -1,6 +1,9 @@
 package io.slingr.endpoints.ethereum;
 
+import java.util.List;
+
 public interface EthereumEvent {
-    void onNewBlock(Block block);
+    void onBlocksFetched(List<BlockContext> blocks);
+    void onNewBlock(BlockContext block);
     void onRemovedBlock(Block block);
 }
@@ -1,5 +1,10 @@
 package io.slingr.endpoints.ethereum;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import io.slingr.endpoints.utils.Json;
 import org.apache.commons.lang.StringUtils;
 import org.ethereum.core.CallTransaction.Function;
@@ -7,10 +12,36 @@ import org.spongycastle.util.encoders.Hex;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
 
 
 public class EthereumHelper {
+    private static final int FUNCTIONS_CACHE_SIZE = 1000;
+    // bulk operations with fewer items than this are not worth splitting in several threads
+    private static final int MIN_ITEMS_TO_PARALLELIZE = 64;
+
+    private static final ForkJoinPool bulkPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    // parsing the ABI is expensive, so functions are parsed once and shared by all helpers; the key
+    // is the ABI definition itself so two definitions with the same name and different types don't collide
+    private static final LoadingCache<String, Function> functionsCache = CacheBuilder.newBuilder()
+            .maximumSize(FUNCTIONS_CACHE_SIZE)
+            .recordStats()
+            .build(new CacheLoader<String, Function>() {
+                @Override
+                public Function load(String fnDef) {
+                    return Function.fromJsonInterface(fnDef);
+                }
+            });
+
+    public static CacheStats getFunctionsCacheStats() {
+        return functionsCache.stats();
+    }
 
 
     public Json getFunctionDefinition(Json abiDef, String fnName) {
@@ -35,8 +66,18 @@ public class EthereumHelper {
     }
 
 
+    /**
+     * Returns the parsed function for the given definition. Instances are shared, so they must not be modified.
+     */
     private Function getFunction(Json fnDef) {
-        return Function.fromJsonInterface(fnDef.toString());
+        try {
+            return functionsCache.getUnchecked(fnDef.toString());
+        } catch (UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
     }
 
 
@@ -120,10 +161,13 @@ public class EthereumHelper {
 
 
     public String encodeFunction(Json fnDef, Json params) {
+        return encodeFunction(fnDef, getFunction(fnDef), params);
+    }
+
+    private String encodeFunction(Json fnDef, Function function, Json params) {
 
         params = checkParams(fnDef, params);
 
-        Function function = getFunction(fnDef);
         byte[] arguments = function.encode(getArguments(params));
 
         return Hex.toHexString(arguments);
@@ -144,15 +188,20 @@ public class EthereumHelper {
     }
 
     public Json decodeResult(Json fnDef, String data) {
+        prepareForDecoding(fnDef);
+        return decodeResult(fnDef, getFunction(fnDef), data);
+    }
 
-        data = removeHexStringToData(data);
-
-        Function function = getFunction(fnDef);
-
+    private void prepareForDecoding(Json fnDef) {
         if ("event".equals(fnDef.string("type"))) {
-            function.outputs = function.inputs;
+            // events are decoded using the inputs; this is done before parsing so the cached function is not modified
             fnDef.set("outputs", fnDef.json("inputs"));
         }
+    }
+
+    private Json decodeResult(Json fnDef, Function function, String data) {
+
+        data = removeHexStringToData(data);
 
         Object[] res = function.decodeResult(Hex.decode(data.getBytes()));
 
@@ -160,32 +209,7 @@ public class EthereumHelper {
 
             for (int i = 0; i < res.length; i++) {
                 Json dt = (Json) fnDef.json("outputs").objects().get(i);
-                String type = dt.string("type");
-                if (isBytes(type) && type.endsWith("[]")) {
-                    Object[] add = (Object[]) res[i];
-                    for (int j = 0; j < add.length; j++) {
-                        if (add[j] instanceof byte[]) {
-                            add[j] = "0x" + Hex.toHexString((byte[]) add[j]);
-                        }
-                    }
-                } else if (isNumber(type) && type.endsWith("[]")) {
-                        Object[] add = (Object[]) res[i];
-                        for (int j = 0; j < add.length; j++) {
-                            if (add[j] instanceof BigInteger) {
-                                add[j] = "0x" + ((BigInteger) add[j]).toString(16);
-                            }
-                        }
-                } else if (isBytes(type) && res[i] instanceof byte[]) {
-                    String bytesQty = type.substring("bytes".length());
-                    String value = Hex.toHexString((byte[]) res[i]);
-                    if (!StringUtils.isBlank(bytesQty) && StringUtils.isNumeric(bytesQty)) {
-                        int bytesSize = Integer.parseInt(bytesQty);
-                        value = value.substring(0, bytesSize * 2);
-                    }
-                    res[i] = "0x" + value;
-                } else if (isNumber(type) && res[i] instanceof BigInteger) {
-                    res[i] = "0x" + ((BigInteger) res[i]).toString(16);
-                }
+                res[i] = formatDecodedValue(dt.string("type"), res[i]);
             }
 
         }
@@ -198,6 +222,137 @@ public class EthereumHelper {
         return resObj;
     }
 
+    /**
+     * Encodes many function calls at once. Each item has the <code>params</code> of the call and optionally
+     * its own <code>fnAbi</code>; if it doesn't have it, the default definition is used, which is parsed only
+     * once for all the items.
+     *
+     * @param defaultFnDef the definition used for items without <code>fnAbi</code>, could be <code>null</code>
+     * @param items the calls to encode
+     * @param parallel if <code>true</code> items are encoded in several threads
+     * @return for each item, in the same order, a map with the encoded call in <code>body</code> or the
+     * error in <code>error</code>
+     */
+    public List<Json> encodeFunctions(Json defaultFnDef, List<Json> items, boolean parallel) {
+        Function defaultFunction = defaultFnDef != null ? getFunction(defaultFnDef) : null;
+        return processItems(items, parallel, i -> {
+            Json item = items.get(i);
+            try {
+                Json fnDef = item.json("fnAbi") != null ? item.json("fnAbi") : defaultFnDef;
+                if (fnDef == null) {
+                    throw new IllegalArgumentException("Function definition is missing");
+                }
+                Function function = fnDef == defaultFnDef ? defaultFunction : getFunction(fnDef);
+                return Json.map().set("body", "0x" + encodeFunction(fnDef, function, item.json("params")));
+            } catch (Exception e) {
+                return Json.map().set("error", String.valueOf(e.getMessage()));
+            }
+        });
+    }
+
+    /**
+     * Decodes the results of many function calls at once. Each item has the returned <code>data</code> and
+     * optionally its own <code>fnAbi</code>, same as in {@link #encodeFunctions(Json, List, boolean)}.
+     *
+     * @return for each item, in the same order, a map with the decoded values in <code>result</code> or the
+     * error in <code>error</code>
+     */
+    public List<Json> decodeResults(Json defaultFnDef, List<Json> items, boolean parallel) {
+        Function defaultFunction = null;
+        if (defaultFnDef != null) {
+            prepareForDecoding(defaultFnDef);
+            defaultFunction = getFunction(defaultFnDef);
+        }
+        Function finalDefaultFunction = defaultFunction;
+        return processItems(items, parallel, i -> {
+            Json item = items.get(i);
+            try {
+                Json fnDef = item.json("fnAbi") != null ? item.json("fnAbi") : defaultFnDef;
+                if (fnDef == null) {
+                    throw new IllegalArgumentException("Function definition is missing");
+                }
+                Function function = finalDefaultFunction;
+                if (fnDef != defaultFnDef) {
+                    prepareForDecoding(fnDef);
+                    function = getFunction(fnDef);
+                }
+                return Json.map().set("result", decodeResult(fnDef, function, item.string("data")));
+            } catch (Exception e) {
+                return Json.map().set("error", String.valueOf(e.getMessage()));
+            }
+        });
+    }
+
+    private List<Json> processItems(List<Json> items, boolean parallel, IntFunction<Json> processor) {
+        return processItems(items, parallel, MIN_ITEMS_TO_PARALLELIZE, processor);
+    }
+
+    /**
+     * Processes the items of a bulk operation, in the pool shared by all helpers when there are enough of them.
+     *
+     * @param items the items to process
+     * @param parallel if <code>true</code> items are processed in several threads
+     * @param minItemsToParallelize below this number items are processed in the calling thread, because
+     *                              splitting the work costs more than what is saved
+     * @param processor receives the index of the item and returns its result; it must not throw exceptions
+     * @return the results in the same order as the items
+     */
+    public List<Json> processItems(List<Json> items, boolean parallel, int minItemsToParallelize, IntFunction<Json> processor) {
+        Json[] results = new Json[items.size()];
+        if (!parallel || items.size() < minItemsToParallelize) {
+            for (int i = 0; i < results.length; i++) {
+                results[i] = processor.apply(i);
+            }
+        } else {
+            // a parallel stream submitted to the pool runs in the pool instead of the common one
+            try {
+                bulkPool.submit(() -> IntStream.range(0, results.length).parallel().forEach(i -> results[i] = processor.apply(i))).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while processing items", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Error processing items", e.getCause());
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Converts decoded bytes and numbers to hexadecimal strings, which is how values are returned to apps.
+     *
+     * @param type the type as it was defined in the ABI
+     * @param value the decoded value
+     * @return the value to return to apps
+     */
+    public Object formatDecodedValue(String type, Object value) {
+        if (isBytes(type) && type.endsWith("[]")) {
+            Object[] add = (Object[]) value;
+            for (int j = 0; j < add.length; j++) {
+                if (add[j] instanceof byte[]) {
+                    add[j] = "0x" + Hex.toHexString((byte[]) add[j]);
+                }
+            }
+        } else if (isNumber(type) && type.endsWith("[]")) {
+            Object[] add = (Object[]) value;
+            for (int j = 0; j < add.length; j++) {
+                if (add[j] instanceof BigInteger) {
+                    add[j] = "0x" + ((BigInteger) add[j]).toString(16);
+                }
+            }
+        } else if (isBytes(type) && value instanceof byte[]) {
+            String bytesQty = type.substring("bytes".length());
+            String hexValue = Hex.toHexString((byte[]) value);
+            if (!StringUtils.isBlank(bytesQty) && StringUtils.isNumeric(bytesQty)) {
+                int bytesSize = Integer.parseInt(bytesQty);
+                hexValue = hexValue.substring(0, bytesSize * 2);
+            }
+            return "0x" + hexValue;
+        } else if (isNumber(type) && value instanceof BigInteger) {
+            return "0x" + ((BigInteger) value).toString(16);
+        }
+        return value;
+    }
+
     private boolean isBytes(String type) {
         if (type != null && (type.startsWith("address") || type.startsWith("bytes"))) {
             return true;
@@ -260,17 +415,17 @@ public class EthereumHelper {
     }
 
     public Json processResult(Json abi, List<Object> topicsList, String data) {
-        Json result = Json.map();
-
-        Json abiCloned = Json.parse(abi.toString());
-        Json indexes = this.splitAbi(abiCloned, true);
-        abiCloned.set("inputs", this.splitAbi(abiCloned, false));
-
-        Json values = this.decodeResult(abiCloned, data);
+        return compileEvent(abi).decode(topicsList, data);
+    }
 
-        result.set("eventName", abi.string("name"));
-        result.set("eventData", this.getKeyValue(abiCloned.json("inputs"), values, 0, indexes.jsons(), topicsList));
-        return result;
+    /**
+     * Prepares the decoder of an event, so logs can be decoded without going through the ABI again.
+     *
+     * @param evDef the definition of the event in the ABI
+     * @return the decoder for the event
+     */
+    public EventDecoder compileEvent(Json evDef) {
+        return new EventDecoder(this, evDef, "0x" + encodeEvent(evDef), splitAbi(evDef, true).jsons(), splitAbi(evDef, false).jsons());
     }
 
     public static long convertedHexToNumber(String number) {
@@ -0,0 +1,92 @@
+package io.slingr.endpoints.ethereum;
+
+import io.slingr.endpoints.utils.Json;
+import org.ethereum.solidity.SolidityType;
+import org.spongycastle.util.encoders.Hex;
+
+import java.util.List;
+
+/**
+ * Decodes logs of an event. Types are resolved when the decoder is created, so decoding
+ * a log only needs to go through the topics and data.
+ */
+public class EventDecoder {
+    private final EthereumHelper ethereumHelper;
+    private final String name;
+    private final String topic;
+    private final String[] indexedNames;
+    private final String[] indexedTypeNames;
+    private final SolidityType[] indexedTypes;
+    private final String[] dataNames;
+    private final String[] dataTypeNames;
+    private final SolidityType[] dataTypes;
+
+    public EventDecoder(EthereumHelper ethereumHelper, Json evDef, String topic, List<Json> indexedInputs, List<Json> dataInputs) {
+        this.ethereumHelper = ethereumHelper;
+        this.name = evDef.string("name");
+        this.topic = topic;
+        this.indexedNames = new String[indexedInputs.size()];
+        this.indexedTypeNames = new String[indexedInputs.size()];
+        this.indexedTypes = new SolidityType[indexedInputs.size()];
+        for (int i = 0; i < indexedInputs.size(); i++) {
+            indexedNames[i] = indexedInputs.get(i).string("name");
+            indexedTypeNames[i] = indexedInputs.get(i).string("type");
+            indexedTypes[i] = SolidityType.getType(indexedTypeNames[i]);
+        }
+        this.dataNames = new String[dataInputs.size()];
+        this.dataTypeNames = new String[dataInputs.size()];
+        this.dataTypes = new SolidityType[dataInputs.size()];
+        for (int i = 0; i < dataInputs.size(); i++) {
+            dataNames[i] = dataInputs.get(i).string("name");
+            dataTypeNames[i] = dataInputs.get(i).string("type");
+            dataTypes[i] = SolidityType.getType(dataTypeNames[i]);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    /**
+     * Decodes a log of this event.
+     *
+     * @param topics the topics of the log, where the first one is the topic of the event
+     * @param data the data of the log in hexadecimal
+     * @return a map with the <code>eventName</code> and the <code>eventData</code>
+     */
+    public Json decode(List<Object> topics, String data) {
+        Json eventData = Json.map();
+        Object[] values = decodeValues(dataTypes, Hex.decode(ethereumHelper.removeHexStringToData(data).getBytes()));
+        for (int i = 0; i < values.length; i++) {
+            eventData.set(dataNames[i], ethereumHelper.formatDecodedValue(dataTypeNames[i], values[i]));
+        }
+        if (indexedTypes.length == topics.size() - 1) {
+            for (int i = 0; i < indexedTypes.length; i++) {
+                byte[] encoded = Hex.decode(ethereumHelper.removeHexStringToData((String) topics.get(i + 1)).getBytes());
+                Object value = decodeValues(new SolidityType[]{indexedTypes[i]}, encoded)[0];
+                eventData.set(indexedNames[i], ethereumHelper.formatDecodedValue(indexedTypeNames[i], value));
+            }
+        }
+        return Json.map()
+                .set("eventName", name)
+                .set("eventData", eventData);
+    }
+
+    private Object[] decodeValues(SolidityType[] types, byte[] encoded) {
+        Object[] values = new Object[types.length];
+        int offset = 0;
+        for (int i = 0; i < types.length; i++) {
+            if (types[i].isDynamicType()) {
+                values[i] = types[i].decode(encoded, SolidityType.IntType.decodeInt(encoded, offset).intValue());
+            } else {
+                values[i] = types[i].decode(encoded, offset);
+            }
+            offset += types[i].getFixedSize();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,214 @@
+package io.slingr.endpoints.ethereum;
+
+import io.slingr.endpoints.services.AppLogs;
+import io.slingr.endpoints.services.Events;
+import io.slingr.endpoints.utils.Json;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends events to the app in background. Events are queued in batches, usually all the events of
+ * one block, and batches are sent one after the other by a single thread, so the order is kept.
+ * <p>
+ * When a batch is sent a callback is called, which is where the caller should flag events as sent
+ * in the data store. If sending fails it is retried with an exponential backoff; if it still fails
+ * the failure callback is called instead, so the caller can forget about the batch. Events that were
+ * not flagged as sent are sent again when the endpoint restarts.
+ * <p>
+ * The queue is bounded: if it is full, the thread adding a batch waits until there is room, so batches
+ * should not be added while holding locks. Callbacks are called from the dispatcher thread, so they must
+ * not wait for locks held while adding batches.
+ */
+public class EventDispatcher {
+    private static final Logger logger = LoggerFactory.getLogger(EventDispatcher.class);
+
+    private final int MAX_QUEUED_BATCHES = 1000;
+    private final int MAX_ATTEMPTS = 5;
+    private final long INITIAL_BACKOFF_MILLIS = 500;
+    private final long MAX_BACKOFF_MILLIS = 30000;
+    private final int MAX_SHUTDOWN_MINUTES = 5;
+
+    private final Events events;
+    private final AppLogs appLogger;
+    private final BlockingQueue<Batch> queue = new LinkedBlockingQueue<>(MAX_QUEUED_BATCHES);
+
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private Thread dispatcherThread;
+    private volatile boolean stopped = false;
+
+    public EventDispatcher(Events events, AppLogs appLogger) {
+        this.events = events;
+        this.appLogger = appLogger;
+    }
+
+    public void start() {
+        dispatcherThread = new Thread(this::dispatchLoop, "events-dispatcher");
+        dispatcherThread.start();
+    }
+
+    /**
+     * Stops accepting new batches and waits until the queued ones are sent.
+     */
+    public void shutdown() {
+        stopped = true;
+        try {
+            dispatcherThread.join(TimeUnit.MINUTES.toMillis(MAX_SHUTDOWN_MINUTES));
+        } catch (InterruptedException e) {
+            appLogger.error("Error shutting down events dispatcher");
+        }
+    }
+
+    /**
+     * Queues a group of events to be sent in order.
+     *
+     * @param batch the events to send
+     * @param onSent called after all the events were sent, can be <code>null</code>
+     */
+    public void dispatch(List<Event> batch, Runnable onSent) {
+        dispatch(batch, onSent, null);
+    }
+
+    /**
+     * Queues a group of events to be sent in order.
+     *
+     * @param batch the events to send
+     * @param onSent called after all the events were sent, can be <code>null</code>
+     * @param onFailed called if some of the events could not be sent or the batch could not be queued, can
+     *                 be <code>null</code>
+     */
+    public void dispatch(List<Event> batch, Runnable onSent, Runnable onFailed) {
+        if (stopped) {
+            logger.warn(String.format("Dispatcher is stopped, [%s] events will be sent when the endpoint restarts", batch.size()));
+            runCallback(onFailed);
+            return;
+        }
+        try {
+            queue.put(new Batch(batch, onSent, onFailed));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            runCallback(onFailed);
+        }
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    private void dispatchLoop() {
+        while (!stopped || !queue.isEmpty()) {
+            try {
+                Batch batch = queue.poll(1, TimeUnit.SECONDS);
+                if (batch != null) {
+                    sendBatch(batch);
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                logger.error(String.format("Error dispatching events: [%s]", e.getMessage()), e);
+            }
+        }
+    }
+
+    private void sendBatch(Batch batch) throws InterruptedException {
+        boolean allSent = true;
+        for (Event event : batch.events) {
+            if (!sendWithRetries(event)) {
+                allSent = false;
+            }
+        }
+        runCallback(allSent ? batch.onSent : batch.onFailed);
+    }
+
+    private void runCallback(Runnable callback) {
+        if (callback == null) {
+            return;
+        }
+        try {
+            callback.run();
+        } catch (Exception e) {
+            logger.error(String.format("Error in callback of dispatched events: [%s]", e.getMessage()), e);
+        }
+    }
+
+    private boolean sendWithRetries(Event event) throws InterruptedException {
+        long backoff = INITIAL_BACKOFF_MILLIS;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                event.send(events);
+                sentCount.incrementAndGet();
+                return true;
+            } catch (Exception e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    failedCount.incrementAndGet();
+                    appLogger.error(String.format("Event [%s] could not be sent after [%s] attempts: [%s]", event.name, attempt, e.getMessage()));
+                    return false;
+                }
+                logger.warn(String.format("Error sending event [%s], retrying in [%s] ms: [%s]", event.name, backoff, e.getMessage()));
+                Thread.sleep(backoff);
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    public static class Event {
+        private final String name;
+        private final String app;
+        private final String env;
+        private final Json data;
+        private final String functionId;
+
+        /**
+         * Creates an event for the app the endpoint belongs to.
+         */
+        public Event(String name, Json data, String functionId) {
+            this(name, null, null, data, functionId);
+        }
+
+        /**
+         * Creates an event for a given app and environment, used when the endpoint is shared.
+         */
+        public Event(String name, String app, String env, Json data, String functionId) {
+            this.name = name;
+            this.app = app;
+            this.env = env;
+            this.data = data;
+            this.functionId = functionId;
+        }
+
+        private void send(Events events) {
+            if (app != null) {
+                events.send(name, app, env, data, functionId);
+            } else {
+                events.send(name, data, functionId);
+            }
+        }
+    }
+
+    private static class Batch {
+        private final List<Event> events;
+        private final Runnable onSent;
+        private final Runnable onFailed;
+
+        Batch(List<Event> events, Runnable onSent, Runnable onFailed) {
+            this.events = new ArrayList<>(events);
+            this.onSent = onSent;
+            this.onFailed = onFailed;
+        }
+    }
+}
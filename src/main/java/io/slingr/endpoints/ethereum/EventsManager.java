@@ -2,30 +2,40 @@ package io.slingr.endpoints.ethereum;
 
 import com.google.common.collect.EvictingQueue;
 import io.slingr.endpoints.services.AppLogs;
-import io.slingr.endpoints.services.Events;
 import io.slingr.endpoints.services.datastores.DataStore;
 import io.slingr.endpoints.services.datastores.DataStoreResponse;
 import io.slingr.endpoints.utils.Json;
 import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 public class EventsManager {
+    private static final Logger logger = LoggerFactory.getLogger(EventsManager.class);
+
     private static final int MAX_BLOCKS = 12;
     private final int CLEANING_WAIT_TIME_MINUTES = 5;
     private final int MAX_SHUTDOWN_MINUTES = 5;
+    private final int MAX_PAGES_TO_SCAN = 20;
 
     private final String EVENT_CONTRACT_EVENT = "contractEvent";
 
     private final String EVENTS_BLOCK_HASH = "blockHash";
     private final String EVENTS_BLOCK = "block";
+    // number of the block as a number, so it can be used in range filters
+    private final String EVENTS_BLOCK_NUMBER = "blockNumber";
     private final String EVENTS_LOGS = "logs";
     private final String EVENTS_REMOVED = "removed";
     private final String EVENTS_SENT = "sent";
@@ -36,7 +46,7 @@ public class EventsManager {
 
     private EthereumHelper ethereumHelper = new EthereumHelper();
     private EthereumApiHelper ethereumApiHelper;
-    private Events events;
+    private EventDispatcher eventDispatcher;
     private AppLogs appLogger;
     private DataStore eventsDs;
     private DataStore contractsDs;
@@ -45,19 +55,45 @@ public class EventsManager {
     private final Json config;
 
     private EvictingQueue<Json> pendingEvents = EvictingQueue.create(MAX_BLOCKS);
-    private Map<String, Map> contractsEvents = new HashMap<>();
+    private Map<String, Map<String, EventDecoder>> contractsEvents = new HashMap<>();
+    private Json logsFilter = null;
     private ScheduledExecutorService cleanerExecutor;
-    private Lock lock = new ReentrantLock();
+    private DataStoreRetention eventsRetention;
+    // events saved before the block number was stored can only be removed by scanning the store
+    private boolean legacyEventsPending = true;
+    // blocks whose events were queued in the dispatcher but are not flagged as sent yet
+    private Set<String> dispatchingBlocks = ConcurrentHashMap.newKeySet();
+    private volatile long lastBlockNumber = 0;
+    private Lock lock;
+    // flags in events documents are updated from the dispatcher thread too, this avoids overwriting them
+    private Lock documentsLock;
+    private final Metrics metrics;
+    // updated while holding the lock, so metrics can be read without it
+    private volatile int pendingEventsCount = 0;
 
-    public EventsManager(EthereumApiHelper ethereumApiHelper, Events events, AppLogs appLogger, DataStore eventsDs, DataStore contractsDs, List<Json> configuredContracts, long confirmationBlocks, Json config) {
+    public EventsManager(EthereumApiHelper ethereumApiHelper, EventDispatcher eventDispatcher, AppLogs appLogger, DataStore eventsDs, DataStore contractsDs, List<Json> configuredContracts, long confirmationBlocks, Json config, Metrics metrics) {
         this.ethereumApiHelper = ethereumApiHelper;
         this.appLogger = appLogger;
-        this.events = events;
+        this.eventDispatcher = eventDispatcher;
         this.eventsDs = eventsDs;
         this.contractsDs = contractsDs;
         this.configuredContracts = configuredContracts;
         this.confirmationBlocks = confirmationBlocks;
         this.config = config;
+        this.metrics = metrics;
+        this.lock = metrics.timedLock("events");
+        this.documentsLock = metrics.timedLock("eventDocuments");
+        this.eventsRetention = new DataStoreRetention("events", eventsDs);
+        registerMetrics();
+    }
+
+    private void registerMetrics() {
+        // blocks waiting for confirmations and blocks whose events are queued in the dispatcher
+        metrics.gauge("events.pendingBlocks", () -> pendingEventsCount);
+        metrics.gauge("events.dispatchingBlocks", () -> dispatchingBlocks.size());
+        metrics.gauge("events.retention", () -> Json.map()
+                .set("purged", eventsRetention.getPurgedCount())
+                .set("lastPurged", eventsRetention.getLastPurgedCount()));
     }
 
     public void start() {
@@ -81,32 +117,66 @@ public class EventsManager {
         for (Json json : eventsRes.getItems()) {
             pendingEvents.add(json);
         }
+        pendingEventsCount = pendingEvents.size();
         // execute thread to clean blocks from the database
         cleanerExecutor = Executors.newSingleThreadScheduledExecutor();
         Runnable cleanerTask = () -> {
-            lock.lock();
+            // only events that were sent or removed, or that are too old to be sent, are cleaned, so this doesn't need the lock
             try {
-                DataStoreResponse res = eventsDs.find();
-                List<Json> blocks = res.getItems();
-                int amountToRemove = blocks.size() - (MAX_BLOCKS * 10);
-                if (amountToRemove > 0) {
-                    appLogger.info(String.format("Removing [%s] old block events", amountToRemove));
-                    for (int i = 0; i < amountToRemove; i++) {
-                        Json block = blocks.get(i);
-                        eventsDs.removeById(block.string("_id"));
-                    }
+                long threshold = lastBlockNumber - MAX_BLOCKS * 10;
+                eventsRetention.startRun();
+                List<Json> filters = new ArrayList<>();
+                filters.add(Json.map().set(EVENTS_SENT, "true").set(EVENTS_BLOCK_NUMBER, Json.map().set("$lt", threshold)));
+                filters.add(Json.map().set(EVENTS_REMOVED, "true").set(EVENTS_BLOCK_NUMBER, Json.map().set("$lt", threshold)));
+                eventsRetention.purge(filters);
+                // events that could not be dispatched stay unsent; they are not pending anymore once they are this old
+                Json unsentFilter = Json.map()
+                        .set(EVENTS_SENT, "false")
+                        .set(EVENTS_REMOVED, "false")
+                        .set(EVENTS_BLOCK_NUMBER, Json.map().set("$lt", threshold - confirmationBlocks));
+                long unsentCount = eventsRetention.purge(Collections.singletonList(unsentFilter));
+                if (unsentCount > 0) {
+                    appLogger.warn(String.format("Removed [%s] old block events that were never sent", unsentCount));
+                }
+                if (legacyEventsPending) {
+                    legacyEventsPending = !purgeLegacyEvents(threshold);
+                }
+                long count = eventsRetention.getLastPurgedCount();
+                if (count > 0) {
+                    appLogger.info(String.format("Removed [%s] old block events", count));
                 } else {
                     appLogger.info("There are no block logs to remove");
                 }
             } catch (Exception e) {
                 appLogger.error("Error cleaning old block logs", e);
-            } finally {
-                lock.unlock();
             }
         };
         cleanerExecutor.scheduleAtFixedRate(cleanerTask, CLEANING_WAIT_TIME_MINUTES, CLEANING_WAIT_TIME_MINUTES, TimeUnit.MINUTES);
     }
 
+    /**
+     * Removes the old events saved without the number of the block, which the filters of the retention
+     * cannot match. They are removed with the same rules, using the number in the block of the events.
+     *
+     * @return <code>true</code> if the whole store was read and there are no events without the number left
+     */
+    private boolean purgeLegacyEvents(long threshold) {
+        AtomicBoolean legacyEventsKept = new AtomicBoolean(false);
+        boolean complete = eventsRetention.purgeByScan(null, events -> {
+            if (!events.isEmpty(EVENTS_BLOCK_NUMBER)) {
+                return false;
+            }
+            long blockNumber = Long.parseLong(events.json(EVENTS_BLOCK).string(Block.NUMBER));
+            boolean done = "true".equals(events.string(EVENTS_SENT)) || "true".equals(events.string(EVENTS_REMOVED));
+            if (done && blockNumber < threshold) {
+                return true;
+            }
+            legacyEventsKept.set(true);
+            return false;
+        }, MAX_PAGES_TO_SCAN);
+        return complete && !legacyEventsKept.get();
+    }
+
     public void shutdown() {
         cleanerExecutor.shutdown();
         try {
@@ -116,26 +186,134 @@ public class EventsManager {
         }
     }
 
-    public void processEventsInBlock(Block block) {
+    public void processEventsInBlock(BlockContext blockContext) {
+        Block block = blockContext.getBlock();
+        if (blockContext.getLogs() == null) {
+            // logs that could not be prefetched are fetched before taking the lock
+            prefetchLogs(Collections.singletonList(blockContext));
+        }
+        List<Runnable> dispatches = new ArrayList<>();
         lock.lock();
         try {
-            List<Json> logs = getLogsInBlock(block);
+            lastBlockNumber = block.getNumber();
+            List<Json> logs = getLogsInBlock(blockContext);
             addBlockLogs(block, logs);
-            checkLogsToSend(block);
+            checkLogsToSend(block, dispatches);
+            pendingEventsCount = pendingEvents.size();
         } finally {
             lock.unlock();
         }
+        // the dispatcher waits if its queue is full, so events are queued without holding the lock; blocks are
+        // processed by one thread, so they are still queued in order
+        for (Runnable dispatch : dispatches) {
+            dispatch.run();
+        }
+    }
+
+    public void prefetchLogs(List<BlockContext> blocks) {
+        // the filter is taken while holding the lock, but logs are fetched without it, so many blocks can be
+        // prefetched while events of other blocks are processed; the filter is built again when contracts
+        // change, so the copy taken here is not modified
+        Json filter;
+        lock.lock();
+        try {
+            filter = contractsEvents.isEmpty() ? null : getLogsFilter();
+        } finally {
+            lock.unlock();
+        }
+        if (filter == null) {
+            // there is nothing to fetch, logs are empty for all blocks
+            for (BlockContext block : blocks) {
+                block.setLogs(new ArrayList<>());
+            }
+            return;
+        }
+        if (blocks.size() > 1 && prefetchLogsByRange(blocks, filter)) {
+            return;
+        }
+        List<String> hashes = new ArrayList<>();
+        for (BlockContext block : blocks) {
+            hashes.add(block.getHash());
+        }
+        Map<String, List<Json>> logsByBlock = ethereumApiHelper.getLogsByBlocks(hashes, filter);
+        for (BlockContext block : blocks) {
+            // if logs could not be fetched for a block they will be fetched again when the block is processed
+            block.setLogs(logsByBlock.get(block.getHash()));
+        }
+    }
+
+    /**
+     * Gets the logs of consecutive blocks in one request and splits them by block. Logs are only
+     * used if all of them belong to the given blocks; it could happen that the chain changed since
+     * blocks were fetched, and in that case logs have to be fetched by block hash.
+     *
+     * @return <code>true</code> if logs were fetched, <code>false</code> otherwise
+     */
+    private boolean prefetchLogsByRange(List<BlockContext> blocks, Json filter) {
+        Map<String, List<Json>> logsByBlock = new HashMap<>();
+        for (int i = 0; i < blocks.size(); i++) {
+            if (i > 0 && blocks.get(i).getNumber() != blocks.get(i - 1).getNumber() + 1) {
+                return false;
+            }
+            logsByBlock.put(blocks.get(i).getHash(), new ArrayList<>());
+        }
+        List<Json> logs = ethereumApiHelper.getLogsByRange(blocks.get(0).getNumber(), blocks.get(blocks.size() - 1).getNumber(), filter);
+        if (logs == null) {
+            return false;
+        }
+        for (Json log : logs) {
+            List<Json> blockLogs = logsByBlock.get(log.string(EVENTS_BLOCK_HASH));
+            if (blockLogs == null) {
+                logger.info(String.format("Log from unknown block [%s], logs will be fetched by block", log.string(EVENTS_BLOCK_HASH)));
+                return false;
+            }
+            blockLogs.add(log);
+        }
+        for (BlockContext block : blocks) {
+            block.setLogs(logsByBlock.get(block.getHash()));
+        }
+        return true;
+    }
+
+    /**
+     * Builds the filter so the node only returns logs of registered contracts and known events.
+     */
+    private Json getLogsFilter() {
+        if (logsFilter == null) {
+            Json addresses = Json.list();
+            Json topics = Json.list();
+            for (Map.Entry<String, Map<String, EventDecoder>> contractEvents : contractsEvents.entrySet()) {
+                addresses.push(contractEvents.getKey());
+                for (String topic : contractEvents.getValue().keySet()) {
+                    topics.push(topic);
+                }
+            }
+            logsFilter = Json.map()
+                    .set("address", addresses)
+                    .set("topics", Json.list().push(topics));
+        }
+        return logsFilter;
     }
 
     public void removeEventsInBlock(Block block) {
+        List<EventDispatcher.Event> removedEvents = null;
         lock.lock();
         try {
-            // get logs for removed block from database
-            Json blockEvents = eventsDs.findOne(Json.map().set(EVENTS_BLOCK_HASH, block.getHash()));
+            // get logs for removed block from database; the document and the blocks being dispatched are checked
+            // while holding the documents lock, so the dispatcher cannot flag them as sent in the middle
+            Json blockEvents;
+            boolean sent;
+            documentsLock.lock();
+            try {
+                blockEvents = eventsDs.findOne(Json.map().set(EVENTS_BLOCK_HASH, block.getHash()));
+                sent = blockEvents != null && ("true".equals(blockEvents.string(EVENTS_SENT)) || dispatchingBlocks.contains(block.getHash()));
+            } finally {
+                documentsLock.unlock();
+            }
             if (blockEvents != null && !blockEvents.isEmpty(EVENTS_BLOCK_HASH)) {
-                if ("true".equals(blockEvents.string(EVENTS_SENT))) {
+                if (sent) {
                     // if they were sent, send the removed event
-                    sendEvents(blockEvents, true);
+                    removedEvents = buildEvents(blockEvents, true);
                 }
                 // remove them from queue and mark as removed in database
                 pendingEvents.removeIf(json -> {
@@ -144,28 +322,34 @@ public class EventsManager {
                     }
                     return false;
                 });
-                blockEvents.set(EVENTS_REMOVED, "true");
-                eventsDs.update(blockEvents);
+                updateBlockEvents(block.getHash(), EVENTS_REMOVED);
+                pendingEventsCount = pendingEvents.size();
             }
         } finally {
             lock.unlock();
         }
+        if (removedEvents != null) {
+            // the dispatcher keeps the order, so if the events are still queued the removed events will go after them
+            eventDispatcher.dispatch(removedEvents, null);
+        }
     }
 
     public void registerContract(String address, Json abiDefinition) {
         lock.lock();
         try {
-            Map<String, Json> topics = new HashMap<>();
+            // decoders are prepared here so logs can be decoded without parsing the ABI each time
+            Map<String, EventDecoder> topics = new HashMap<>();
             boolean added = false;
             for (Json abi : abiDefinition.jsons()) {
                 if ("event".equals(abi.string("type"))) {
                     added = true;
-                    String topic = "0x" + ethereumHelper.encodeEvent(abi);
-                    topics.put(topic, abi);
+                    EventDecoder decoder = ethereumHelper.compileEvent(abi);
+                    topics.put(decoder.getTopic(), decoder);
                 }
             }
             if (added) {
                 contractsEvents.put(address, topics);
+                logsFilter = null;
             }
         } finally {
             lock.unlock();
@@ -176,6 +360,7 @@ public class EventsManager {
         lock.lock();
         try {
             contractsEvents.remove(address);
+            logsFilter = null;
         } finally {
             lock.unlock();
         }
@@ -183,20 +368,28 @@ public class EventsManager {
 
     public Json decodeEvent(String address, List<Object> topicsList, String data) {
         Json result = null;
-        Map<String, Json> topics = contractsEvents.get(address);
+        Map<String, EventDecoder> topics = contractsEvents.get(address);
         if (topics != null && topicsList != null) {
             if (topicsList.size() > 0) {
-                Json abi = topics.get(topicsList.get(0));
-                if (abi != null) {
-                    result = ethereumHelper.processResult(abi, topicsList, data);
+                EventDecoder decoder = topics.get(topicsList.get(0));
+                if (decoder != null) {
+                    result = decoder.decode(topicsList, data);
                 }
             }
         }
         return result;
     }
 
-    private List<Json> getLogsInBlock(Block block) {
-        List<Json> logs = ethereumApiHelper.getLogsByBlock(block.getHash());
+    private List<Json> getLogsInBlock(BlockContext blockContext) {
+        List<Json> logs = blockContext.getLogs();
+        if (logs == null) {
+            if (contractsEvents.isEmpty()) {
+                return new ArrayList<>();
+            }
+            logs = ethereumApiHelper.getLogsByBlock(blockContext.getHash(), getLogsFilter());
+        }
+        // the node already filters logs, but we double check in case some contract was removed in the meantime
+        logs = new ArrayList<>(logs);
         logs.removeIf(log -> {
             String contractAddress = log.string("address");
             if (!contractsEvents.containsKey(contractAddress)) {
@@ -204,13 +397,15 @@ public class EventsManager {
             }
             return false;
         });
+        blockContext.setLogs(logs);
         return logs;
     }
 
     private void addBlockLogs(Block block, List<Json> logs) {
         Json eventsDocument = Json.map();
         eventsDocument.set(EVENTS_BLOCK_HASH, block.getHash());
-        eventsDocument.set(EVENTS_BLOCK, block.toJson());
+        eventsDocument.set(EVENTS_BLOCK, block.toSummaryJson());
+        eventsDocument.set(EVENTS_BLOCK_NUMBER, block.getNumber());
         eventsDocument.set(EVENTS_LOGS, logs);
         eventsDocument.set(EVENTS_REMOVED, "false");
         eventsDocument.set(EVENTS_SENT, "false");
@@ -218,26 +413,64 @@ public class EventsManager {
         pendingEvents.add(eventsDocument);
     }
 
-    private void checkLogsToSend(Block block) {
+    private void checkLogsToSend(Block block, List<Runnable> dispatches) {
         long diff;
         do {
             Json events = pendingEvents.peek();
             long blockNumber = Long.parseLong(events.json(EVENTS_BLOCK).string(Block.NUMBER));
             diff = block.getNumber() - blockNumber;
             if (diff >= confirmationBlocks) {
-                sendEvents(events, false);
-                events.string(EVENTS_SENT, "true");
-                try {
-                    eventsDs.update(events);
-                } catch (Exception e) {
-                    appLogger.error(String.format("There were errors trying to update block events with hash [%s] as sent", events.string(EVENTS_BLOCK_HASH)), e);
-                }
+                String blockHash = events.string(EVENTS_BLOCK_HASH);
+                // all the events in the block go in one batch and are flagged as sent once the dispatcher sends them
+                dispatchingBlocks.add(blockHash);
+                List<EventDispatcher.Event> batch = buildEvents(events, false);
+                long queuedAt = System.nanoTime();
+                dispatches.add(() -> eventDispatcher.dispatch(batch, () -> {
+                    // time since the events were queued until all of them were sent
+                    metrics.recordLatency("events.dispatch", System.nanoTime() - queuedAt);
+                    markBlockEventsAsSent(blockHash);
+                }, () -> {
+                    // events are not flagged as sent, so they will be sent again when the endpoint restarts
+                    dispatchingBlocks.remove(blockHash);
+                }));
                 pendingEvents.poll();
             }
         } while (!pendingEvents.isEmpty() && diff > confirmationBlocks);
     }
 
-    private void sendEvents(Json logsDb, boolean removed) {
+    private void markBlockEventsAsSent(String blockHash) {
+        documentsLock.lock();
+        try {
+            setBlockEventsFlag(blockHash, EVENTS_SENT);
+        } catch (Exception e) {
+            appLogger.error(String.format("There were errors trying to update block events with hash [%s] as sent", blockHash), e);
+        } finally {
+            // removed while holding the documents lock, so a removed block sees either the flag or the block being dispatched
+            dispatchingBlocks.remove(blockHash);
+            documentsLock.unlock();
+        }
+    }
+
+    private void updateBlockEvents(String blockHash, String flag) {
+        documentsLock.lock();
+        try {
+            setBlockEventsFlag(blockHash, flag);
+        } finally {
+            documentsLock.unlock();
+        }
+    }
+
+    private void setBlockEventsFlag(String blockHash, String flag) {
+        // the document is read again so a flag set from another thread is not lost
+        Json blockEvents = eventsDs.findOne(Json.map().set(EVENTS_BLOCK_HASH, blockHash));
+        if (blockEvents != null) {
+            blockEvents.set(flag, "true");
+            eventsDs.update(blockEvents);
+        }
+    }
+
+    private List<EventDispatcher.Event> buildEvents(Json logsDb, boolean removed) {
+        List<EventDispatcher.Event> result = new ArrayList<>();
         List<Json> logs = logsDb.jsons(EVENTS_LOGS);
         for (Json log : logs) {
             Json parsedLog = decodeEvent(log.string("address"), log.objects("topics"), log.string("data"));
@@ -249,12 +482,17 @@ public class EventsManager {
                 event.set(APP_EVENTS_EVENT_DATA, parsedLog.json("eventData"));
                 // event should be sent to the proper apps
                 if (isSharedEndpoint()) {
-                    events.send(EVENT_CONTRACT_EVENT, logsDb.string("app"), logsDb.string("env"), event);
+                    result.add(new EventDispatcher.Event(EVENT_CONTRACT_EVENT, logsDb.string("app"), logsDb.string("env"), event, null));
                 } else {
-                    events.send(EVENT_CONTRACT_EVENT, event);
+                    result.add(new EventDispatcher.Event(EVENT_CONTRACT_EVENT, event, null));
                 }
             }
         }
+        return result;
+    }
+
+    public DataStoreRetention getRetention() {
+        return eventsRetention;
     }
 
     private boolean isSharedEndpoint() {
@@ -0,0 +1,229 @@
+package io.slingr.endpoints.ethereum;
+
+import io.slingr.endpoints.utils.Json;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Counters, latencies and gauges of the endpoint, so it is possible to see where time goes when it gets
+ * behind. Everything is kept in memory since the endpoint started and {@link #snapshot()} returns the
+ * current values.
+ * <p>
+ * Recording is cheap and lock-free, so it can be used in hot paths.
+ */
+public class Metrics {
+
+    private final Map<String, Latency> latencies = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, Supplier<Object>> gauges = new ConcurrentHashMap<>();
+
+    public Latency latency(String name) {
+        return latencies.computeIfAbsent(name, n -> new Latency());
+    }
+
+    public void recordLatency(String name, long nanos) {
+        latency(name).record(nanos);
+    }
+
+    public void increment(String name) {
+        counters.computeIfAbsent(name, n -> new LongAdder()).increment();
+    }
+
+    /**
+     * Registers a value that is calculated when the snapshot is taken. The supplier must be thread-safe.
+     */
+    public void gauge(String name, Supplier<Object> supplier) {
+        gauges.put(name, supplier);
+    }
+
+    /**
+     * Creates a lock that records how long threads wait to get it and how long they hold it, under
+     * <code>locks.[name].wait</code> and <code>locks.[name].hold</code>.
+     */
+    public Lock timedLock(String name) {
+        return new TimedLock(latency("locks." + name + ".wait"), latency("locks." + name + ".hold"));
+    }
+
+    public Json snapshot() {
+        Json latenciesJson = Json.map();
+        for (Map.Entry<String, Latency> entry : new TreeMap<>(latencies).entrySet()) {
+            latenciesJson.set(entry.getKey(), entry.getValue().toJson());
+        }
+        Json countersJson = Json.map();
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(counters).entrySet()) {
+            countersJson.set(entry.getKey(), entry.getValue().sum());
+        }
+        Json gaugesJson = Json.map();
+        for (Map.Entry<String, Supplier<Object>> entry : new TreeMap<>(gauges).entrySet()) {
+            try {
+                gaugesJson.set(entry.getKey(), entry.getValue().get());
+            } catch (Exception e) {
+                // a component that is not started yet shouldn't break the whole snapshot
+                gaugesJson.set(entry.getKey(), null);
+            }
+        }
+        return Json.map()
+                .set("timestamp", System.currentTimeMillis())
+                .set("latencies", latenciesJson)
+                .set("counters", countersJson)
+                .set("gauges", gaugesJson);
+    }
+
+    /**
+     * Histogram of durations with fixed buckets, from microseconds for locks to seconds for requests
+     * to the node. Percentiles are the upper bound of the bucket where they fall.
+     */
+    public static class Latency {
+        private static final long[] BUCKETS_MICROS = {10, 50, 100, 500, 1000, 5000, 10000, 50000, 100000, 500000,
+                1000000, 5000000, 10000000, 30000000, Long.MAX_VALUE};
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS_MICROS.length);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        public void record(long nanos) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+            int bucket = 0;
+            while (micros > BUCKETS_MICROS[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public Json toJson() {
+            long[] values = new long[BUCKETS_MICROS.length];
+            long total = 0;
+            for (int i = 0; i < values.length; i++) {
+                values[i] = buckets.get(i);
+                total += values[i];
+            }
+            Json bucketsJson = Json.map();
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] > 0) {
+                    bucketsJson.set(bucketLabel(i), values[i]);
+                }
+            }
+            return Json.map()
+                    .set("count", total)
+                    .set("meanMillis", total > 0 ? toMillis(totalNanos.sum() / total) : 0)
+                    .set("maxMillis", toMillis(maxNanos.get()))
+                    .set("p50Millis", percentile(values, total, 0.5))
+                    .set("p95Millis", percentile(values, total, 0.95))
+                    .set("p99Millis", percentile(values, total, 0.99))
+                    .set("buckets", bucketsJson);
+        }
+
+        private double percentile(long[] values, long total, double percentile) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * percentile);
+            long accumulated = 0;
+            for (int i = 0; i < values.length; i++) {
+                accumulated += values[i];
+                if (accumulated >= rank) {
+                    // the bound of the bucket is never more than the max, and the last bucket doesn't have one
+                    double max = toMillis(maxNanos.get());
+                    return i < values.length - 1 ? Math.min(BUCKETS_MICROS[i] / 1000.0, max) : max;
+                }
+            }
+            return toMillis(maxNanos.get());
+        }
+
+        private String bucketLabel(int bucket) {
+            return bucket < BUCKETS_MICROS.length - 1 ? "<=" + (BUCKETS_MICROS[bucket] / 1000.0) + "ms" : ">" + (BUCKETS_MICROS[bucket - 1] / 1000.0) + "ms";
+        }
+
+        private static double toMillis(long nanos) {
+            return nanos / 1000000.0;
+        }
+    }
+
+    /**
+     * Reentrant lock that records the wait and hold times of the outermost acquisition.
+     */
+    private static class TimedLock implements Lock {
+        private final ReentrantLock delegate = new ReentrantLock();
+        private final Latency waitLatency;
+        private final Latency holdLatency;
+        // only written and read by the thread holding the lock
+        private long acquiredAt;
+
+        TimedLock(Latency waitLatency, Latency holdLatency) {
+            this.waitLatency = waitLatency;
+            this.holdLatency = holdLatency;
+        }
+
+        @Override
+        public void lock() {
+            long start = System.nanoTime();
+            delegate.lock();
+            acquired(start);
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            long start = System.nanoTime();
+            delegate.lockInterruptibly();
+            acquired(start);
+        }
+
+        @Override
+        public boolean tryLock() {
+            long start = System.nanoTime();
+            if (delegate.tryLock()) {
+                acquired(start);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            long start = System.nanoTime();
+            if (delegate.tryLock(time, unit)) {
+                acquired(start);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void unlock() {
+            if (delegate.getHoldCount() == 1) {
+                holdLatency.record(System.nanoTime() - acquiredAt);
+            }
+            delegate.unlock();
+        }
+
+        @Override
+        public Condition newCondition() {
+            return delegate.newCondition();
+        }
+
+        private void acquired(long start) {
+            if (delegate.getHoldCount() == 1) {
+                acquiredAt = System.nanoTime();
+                waitLatency.record(acquiredAt - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package io.slingr.endpoints.ethereum;
+
+import io.slingr.endpoints.utils.Json;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spongycastle.util.encoders.Hex;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Executes many read-only calls to contracts with as few requests to the node as possible.
+ * <p>
+ * If an aggregator contract is configured, calls are packed in calls to its <code>tryAggregate</code>
+ * function (Multicall2 and Multicall3 interface), so the node executes many calls in one
+ * <code>eth_call</code>. Otherwise each call is a separate <code>eth_call</code>, but all of them are
+ * sent in JSON-RPC batches.
+ */
+public class MultiCaller {
+    private static final Logger logger = LoggerFactory.getLogger(MultiCaller.class);
+
+    // tryAggregate(bool requireSuccess, (address target, bytes callData)[] calls) returns ((bool success, bytes returnData)[])
+    private static final String TRY_AGGREGATE_SELECTOR = "bce38bd7";
+    // keeps each call to the aggregator under the gas limit nodes set for eth_call
+    private static final int MAX_CALLS_PER_AGGREGATE = 200;
+    private static final int WORD_SIZE = 32;
+
+    private final EthereumApiHelper ethereumApiHelper;
+    private final EthereumHelper ethereumHelper;
+    private final String aggregatorAddress;
+
+    public MultiCaller(EthereumApiHelper ethereumApiHelper, EthereumHelper ethereumHelper, String aggregatorAddress) {
+        this.ethereumApiHelper = ethereumApiHelper;
+        this.ethereumHelper = ethereumHelper;
+        this.aggregatorAddress = StringUtils.isNotBlank(aggregatorAddress) ? aggregatorAddress : null;
+    }
+
+    /**
+     * Executes the calls and decodes their results.
+     *
+     * @param calls the calls to execute
+     * @param from the address used as sender of the calls, could be <code>null</code>
+     * @param block the block where calls are executed, like <code>latest</code>
+     * @return for each call, in the same order, a map with the decoded values in <code>result</code> or the
+     * error in <code>error</code>
+     */
+    public List<Json> call(List<Call> calls, String from, String block) {
+        List<Json> results = new ArrayList<>();
+        if (calls.isEmpty()) {
+            return results;
+        }
+        List<String> data = aggregatorAddress != null ? callWithAggregator(calls, from, block) : callInBatch(calls, from, block);
+        for (int i = 0; i < calls.size(); i++) {
+            Call call = calls.get(i);
+            String callData = data.get(i);
+            if (callData == null) {
+                results.add(Json.map().set("error", "Call failed"));
+                continue;
+            }
+            try {
+                results.add(Json.map().set("result", ethereumHelper.decodeResult(call.fnDef, callData)));
+            } catch (Exception e) {
+                results.add(Json.map().set("error", String.format("Error decoding result: %s", e.getMessage())));
+            }
+        }
+        return results;
+    }
+
+    private List<String> callInBatch(List<Call> calls, String from, String block) {
+        List<Json> bodies = new ArrayList<>();
+        for (Call call : calls) {
+            bodies.add(getCallBody(call.to, call.data, from, block));
+        }
+        List<String> data = new ArrayList<>();
+        for (Json response : ethereumApiHelper.postBatch(bodies)) {
+            data.add(response != null && response.json("error") == null ? response.string("result") : null);
+        }
+        return data;
+    }
+
+    private List<String> callWithAggregator(List<Call> calls, String from, String block) {
+        List<Json> bodies = new ArrayList<>();
+        for (int start = 0; start < calls.size(); start += MAX_CALLS_PER_AGGREGATE) {
+            List<Call> chunk = calls.subList(start, Math.min(start + MAX_CALLS_PER_AGGREGATE, calls.size()));
+            bodies.add(getCallBody(aggregatorAddress, "0x" + Hex.toHexString(encodeTryAggregate(chunk)), from, block));
+        }
+        logger.debug("Executing [{}] calls in [{}] calls to aggregator", calls.size(), bodies.size());
+        List<String> data = new ArrayList<>();
+        List<Json> responses = ethereumApiHelper.postBatch(bodies);
+        for (int i = 0; i < responses.size(); i++) {
+            int chunkSize = Math.min(MAX_CALLS_PER_AGGREGATE, calls.size() - i * MAX_CALLS_PER_AGGREGATE);
+            Json response = responses.get(i);
+            List<String> chunkData = null;
+            if (response != null && response.json("error") == null && response.string("result") != null) {
+                try {
+                    chunkData = decodeTryAggregate(Hex.decode(ethereumHelper.removeHexStringToData(response.string("result"))));
+                } catch (Exception e) {
+                    logger.warn(String.format("Invalid response from aggregator: [%s]", e.getMessage()), e);
+                }
+            }
+            if (chunkData == null || chunkData.size() != chunkSize) {
+                chunkData = Arrays.asList(new String[chunkSize]);
+            }
+            data.addAll(chunkData);
+        }
+        return data;
+    }
+
+    private Json getCallBody(String to, String data, String from, String block) {
+        Json callObject = Json.map()
+                .set("to", to)
+                .set("data", data);
+        if (StringUtils.isNotBlank(from)) {
+            callObject.set("from", from);
+        }
+        return ethereumApiHelper.getBody("eth_call", Json.list().push(callObject).push(block));
+    }
+
+    /**
+     * Encodes a call to <code>tryAggregate(false, calls)</code>.
+     */
+    static byte[] encodeTryAggregate(List<Call> calls) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(Hex.decode(TRY_AGGREGATE_SELECTOR), 0, 4);
+        // requireSuccess = false, so a failing call doesn't revert the others
+        writeWord(out, BigInteger.ZERO);
+        // offset of the array, after the two head words
+        writeWord(out, BigInteger.valueOf(2 * WORD_SIZE));
+        writeWord(out, BigInteger.valueOf(calls.size()));
+        // each tuple is dynamic, so the array has the offsets first and then the tuples
+        List<byte[]> tuples = new ArrayList<>();
+        for (Call call : calls) {
+            tuples.add(encodeCallTuple(call));
+        }
+        long offset = (long) calls.size() * WORD_SIZE;
+        for (byte[] tuple : tuples) {
+            writeWord(out, BigInteger.valueOf(offset));
+            offset += tuple.length;
+        }
+        for (byte[] tuple : tuples) {
+            out.write(tuple, 0, tuple.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] encodeCallTuple(Call call) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] callData = Hex.decode(call.data.startsWith("0x") ? call.data.substring(2) : call.data);
+        writeWord(out, new BigInteger(call.to.startsWith("0x") ? call.to.substring(2) : call.to, 16));
+        // offset of the bytes, after the address and the offset itself
+        writeWord(out, BigInteger.valueOf(2 * WORD_SIZE));
+        writeWord(out, BigInteger.valueOf(callData.length));
+        out.write(callData, 0, callData.length);
+        int padding = (WORD_SIZE - callData.length % WORD_SIZE) % WORD_SIZE;
+        out.write(new byte[padding], 0, padding);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes the <code>(bool success, bytes returnData)[]</code> returned by <code>tryAggregate</code>.
+     *
+     * @return the returned data of each call in hexadecimal, or <code>null</code> for calls that failed
+     */
+    static List<String> decodeTryAggregate(byte[] data) {
+        int arrayStart = readInt(data, 0);
+        int count = readInt(data, arrayStart);
+        int elementsStart = arrayStart + WORD_SIZE;
+        List<String> results = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int tupleStart = elementsStart + readInt(data, elementsStart + i * WORD_SIZE);
+            boolean success = readInt(data, tupleStart) != 0;
+            int bytesStart = tupleStart + readInt(data, tupleStart + WORD_SIZE);
+            int length = readInt(data, bytesStart);
+            if (success) {
+                results.add("0x" + Hex.toHexString(data, bytesStart + WORD_SIZE, length));
+            } else {
+                results.add(null);
+            }
+        }
+        return results;
+    }
+
+    private static void writeWord(ByteArrayOutputStream out, BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        // toByteArray() could add a leading zero for the sign
+        int length = Math.min(bytes.length, WORD_SIZE);
+        out.write(new byte[WORD_SIZE - length], 0, WORD_SIZE - length);
+        out.write(bytes, bytes.length - length, length);
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        if (offset < 0 || offset + WORD_SIZE > data.length) {
+            throw new IllegalArgumentException(String.format("Offset [%s] is out of the data", offset));
+        }
+        return new BigInteger(1, Arrays.copyOfRange(data, offset, offset + WORD_SIZE)).intValueExact();
+    }
+
+    public static class Call {
+        private final String to;
+        private final Json fnDef;
+        private final String data;
+
+        /**
+         * @param to the address of the contract
+         * @param fnDef the definition of the function, used to decode the result
+         * @param data the encoded call, in hexadecimal
+         */
+        public Call(String to, Json fnDef, String data) {
+            this.to = to;
+            this.fnDef = fnDef;
+            this.data = data;
+        }
+    }
+}
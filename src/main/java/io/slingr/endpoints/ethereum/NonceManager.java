@@ -0,0 +1,175 @@
+package io.slingr.endpoints.ethereum;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the next nonce of each account that sends transactions through the endpoint, so many transactions
+ * can be sent from the same account at the same time without asking the node for the count each time.
+ * <p>
+ * The counter of an account is taken from the pending transaction count of the node the first time it is
+ * used and after a resync. Nonces of transactions that couldn't be sent are released and given again before
+ * new ones, so there are no gaps that would stop later transactions from being mined.
+ * <p>
+ * Reserved nonces are kept until the node has them. A resync never moves the counter below them, because
+ * they could still be sent. If the nonce the node expects next was reserved long ago and was never sent
+ * nor released, like when the confirmation of a transaction is abandoned, it expires and is given again.
+ */
+public class NonceManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(NonceManager.class);
+
+    // same time the scripts used to keep the nonce of an account before nonces were reserved in the endpoint
+    private static final long DEFAULT_RESERVATION_TTL_MILLIS = 2 * 60 * 1000;
+
+    private final EthereumApiHelper ethereumApiHelper;
+    private final Metrics metrics;
+    private final long reservationTtlMillis;
+    private final Map<String, AccountNonces> accounts = new ConcurrentHashMap<>();
+
+    public NonceManager(EthereumApiHelper ethereumApiHelper, Metrics metrics) {
+        this(ethereumApiHelper, metrics, DEFAULT_RESERVATION_TTL_MILLIS);
+    }
+
+    public NonceManager(EthereumApiHelper ethereumApiHelper, Metrics metrics, long reservationTtlMillis) {
+        this.ethereumApiHelper = ethereumApiHelper;
+        this.metrics = metrics;
+        this.reservationTtlMillis = reservationTtlMillis;
+        metrics.gauge("nonces.accounts", () -> accounts.size());
+    }
+
+    /**
+     * Returns a nonce that no other transaction of the account will get, until it is released.
+     *
+     * @param address the address of the account; case and <code>0x</code> don't matter
+     * @return the nonce
+     */
+    public long reserve(String address) {
+        String normalizedAddress = normalize(address);
+        AccountNonces nonces = accounts.computeIfAbsent(normalizedAddress, a -> new AccountNonces());
+        // each account has its own monitor, so the request to the node only blocks the same account
+        synchronized (nonces) {
+            long now = System.currentTimeMillis();
+            if (!nonces.synced) {
+                Long count = ethereumApiHelper.getTransactionCount(normalizedAddress, "pending");
+                if (count == null) {
+                    throw new IllegalStateException(String.format("Cannot get transaction count of address [%s]", normalizedAddress));
+                }
+                sync(normalizedAddress, nonces, count, now);
+                nonces.synced = true;
+            } else if (isCheckNeeded(nonces, now)) {
+                // if the count is not available now it will be checked again in the next reservation
+                Long count = ethereumApiHelper.getTransactionCount(normalizedAddress, "pending");
+                if (count != null) {
+                    sync(normalizedAddress, nonces, count, now);
+                }
+            }
+            Long released = nonces.released.pollFirst();
+            long nonce = released != null ? released : nonces.next++;
+            nonces.reservations.put(nonce, now);
+            return nonce;
+        }
+    }
+
+    /**
+     * The node is asked for the count when the lowest reserved nonce was reserved long ago, because it could
+     * have been abandoned, but not more often than the time a reservation lasts.
+     */
+    private boolean isCheckNeeded(AccountNonces nonces, long now) {
+        if (nonces.reservations.isEmpty() || now - nonces.lastCheck < reservationTtlMillis) {
+            return false;
+        }
+        return now - nonces.reservations.firstEntry().getValue() >= reservationTtlMillis;
+    }
+
+    /**
+     * Updates the nonces of the account with the pending transaction count of the node. It has to be called
+     * while holding the monitor of the account.
+     */
+    private void sync(String address, AccountNonces nonces, long count, long now) {
+        nonces.lastCheck = now;
+        // nonces lower than the count were already used, by the endpoint or outside of it
+        nonces.reservations.headMap(count).clear();
+        nonces.released.headSet(count).clear();
+        // reserved nonces that were not sent yet are above the count, so the counter never goes below them
+        nonces.next = Math.max(nonces.next, count);
+        if (count < nonces.next && !nonces.released.contains(count)) {
+            Long reservedAt = nonces.reservations.get(count);
+            if (reservedAt == null || now - reservedAt >= reservationTtlMillis) {
+                // the node is waiting for this nonce and nobody is going to send it
+                nonces.reservations.remove(count);
+                nonces.released.add(count);
+                metrics.increment("nonces.expired");
+                logger.info("Nonce [{}] of address [{}] was not used and will be given again", count, address);
+            }
+        }
+    }
+
+    /**
+     * Gives back a nonce whose transaction wasn't sent, so it is used by the next transaction of the account.
+     *
+     * @param address the address of the account
+     * @param nonce the nonce returned by {@link #reserve(String)}
+     */
+    public void release(String address, long nonce) {
+        AccountNonces nonces = accounts.get(normalize(address));
+        if (nonces == null) {
+            return;
+        }
+        synchronized (nonces) {
+            nonces.reservations.remove(nonce);
+            if (!nonces.synced || nonce >= nonces.next) {
+                return;
+            }
+            if (nonce == nonces.next - 1) {
+                nonces.next--;
+                // nonces released before that are now at the end too
+                while (!nonces.released.isEmpty() && nonces.released.last() == nonces.next - 1) {
+                    nonces.released.pollLast();
+                    nonces.next--;
+                }
+            } else {
+                nonces.released.add(nonce);
+            }
+        }
+    }
+
+    /**
+     * Makes the counter of the account to be taken from the node again the next time a nonce is reserved.
+     * It has to be called when the nonces of the account could have been used outside the endpoint, like
+     * when a transaction is replaced or the node rejects one. Nonces that are still reserved are kept, so
+     * the counter only goes back when they are released or expire.
+     *
+     * @param address the address of the account
+     */
+    public void resync(String address) {
+        AccountNonces nonces = accounts.get(normalize(address));
+        if (nonces == null) {
+            return;
+        }
+        synchronized (nonces) {
+            nonces.synced = false;
+        }
+        metrics.increment("nonces.resyncs");
+        logger.info("Nonces of address [{}] will be synced with the node", address);
+    }
+
+    private String normalize(String address) {
+        String normalizedAddress = address.toLowerCase();
+        return normalizedAddress.startsWith("0x") ? normalizedAddress : "0x" + normalizedAddress;
+    }
+
+    private static class AccountNonces {
+        private boolean synced = false;
+        private long next;
+        private final TreeSet<Long> released = new TreeSet<>();
+        // nonces given that the node doesn't have yet, with the time they were reserved
+        private final TreeMap<Long, Long> reservations = new TreeMap<>();
+        private long lastCheck = 0;
+    }
+}
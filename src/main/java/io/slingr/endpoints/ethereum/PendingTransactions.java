@@ -0,0 +1,135 @@
+package io.slingr.endpoints.ethereum;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Transactions that are waiting to be confirmed, indexed by hash and by sender and nonce. The index
+ * by sender allows to find replaced transactions or transactions with lower nonces without going
+ * through all pending transactions. It also counts transactions by timestamp, so the oldest one is
+ * known without going through all of them.
+ * <p>
+ * This class is not thread-safe, the transaction manager has to hold its lock to use it.
+ */
+public class PendingTransactions {
+
+    private final Map<String, Transaction> transactions = new LinkedHashMap<>();
+    private final Map<String, TreeMap<Long, Set<String>>> transactionsBySender = new HashMap<>();
+    private final TreeMap<Long, Integer> countByTimestamp = new TreeMap<>();
+
+    public void put(Transaction tx) {
+        remove(tx.getTxHash());
+        transactions.put(tx.getTxHash(), tx);
+        countByTimestamp.merge(tx.getTimestamp(), 1, Integer::sum);
+        Long nonce = parseNonce(tx.getNonce());
+        if (tx.getFrom() != null && nonce != null) {
+            transactionsBySender
+                    .computeIfAbsent(tx.getFrom(), from -> new TreeMap<>())
+                    .computeIfAbsent(nonce, n -> new LinkedHashSet<>())
+                    .add(tx.getTxHash());
+        }
+    }
+
+    public Transaction get(String txHash) {
+        return transactions.get(txHash);
+    }
+
+    public boolean containsKey(String txHash) {
+        return transactions.containsKey(txHash);
+    }
+
+    public Transaction remove(String txHash) {
+        Transaction tx = transactions.remove(txHash);
+        if (tx != null) {
+            // a count that goes to zero is removed
+            countByTimestamp.computeIfPresent(tx.getTimestamp(), (timestamp, count) -> count > 1 ? count - 1 : null);
+            Long nonce = parseNonce(tx.getNonce());
+            TreeMap<Long, Set<String>> senderTransactions = transactionsBySender.get(tx.getFrom());
+            if (senderTransactions != null && nonce != null) {
+                Set<String> hashes = senderTransactions.get(nonce);
+                if (hashes != null) {
+                    hashes.remove(txHash);
+                    if (hashes.isEmpty()) {
+                        senderTransactions.remove(nonce);
+                    }
+                }
+                if (senderTransactions.isEmpty()) {
+                    transactionsBySender.remove(tx.getFrom());
+                }
+            }
+        }
+        return tx;
+    }
+
+    public Set<String> keySet() {
+        return Collections.unmodifiableSet(transactions.keySet());
+    }
+
+    public Collection<Transaction> values() {
+        return Collections.unmodifiableCollection(transactions.values());
+    }
+
+    public int size() {
+        return transactions.size();
+    }
+
+    /**
+     * Returns the timestamp of the oldest transaction, or <code>0</code> if there are no transactions.
+     */
+    public long getOldestTimestamp() {
+        return countByTimestamp.isEmpty() ? 0 : countByTimestamp.firstKey();
+    }
+
+    /**
+     * Returns the other transactions of the same sender with the same nonce.
+     */
+    public List<Transaction> getWithSameNonce(Transaction tx) {
+        List<Transaction> result = new ArrayList<>();
+        TreeMap<Long, Set<String>> senderTransactions = transactionsBySender.get(tx.getFrom());
+        Long nonce = parseNonce(tx.getNonce());
+        if (senderTransactions != null && nonce != null && senderTransactions.containsKey(nonce)) {
+            for (String txHash : senderTransactions.get(nonce)) {
+                if (!txHash.equals(tx.getTxHash())) {
+                    result.add(transactions.get(txHash));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the transactions of the same sender with a lower nonce.
+     */
+    public List<Transaction> getWithLowerNonce(Transaction tx) {
+        List<Transaction> result = new ArrayList<>();
+        TreeMap<Long, Set<String>> senderTransactions = transactionsBySender.get(tx.getFrom());
+        Long nonce = parseNonce(tx.getNonce());
+        if (senderTransactions != null && nonce != null) {
+            for (Set<String> hashes : senderTransactions.headMap(nonce, false).values()) {
+                for (String txHash : hashes) {
+                    result.add(transactions.get(txHash));
+                }
+            }
+        }
+        return result;
+    }
+
+    private Long parseNonce(String nonce) {
+        if (nonce == null) {
+            return null;
+        }
+        try {
+            return Long.decode(nonce);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
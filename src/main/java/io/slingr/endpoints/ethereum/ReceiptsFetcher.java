@@ -0,0 +1,77 @@
+package io.slingr.endpoints.ethereum;
+
+import io.slingr.endpoints.utils.Json;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetches receipts of transactions in batches, running up to a configured number of batches at the same time.
+ * Receipts that could not be fetched are not returned, so they can be retried later.
+ */
+public class ReceiptsFetcher {
+    private static final Logger logger = LoggerFactory.getLogger(ReceiptsFetcher.class);
+
+    private final int MAX_SHUTDOWN_MINUTES = 5;
+
+    private final EthereumApiHelper ethereumApiHelper;
+    private final int batchSize;
+    private final ExecutorService executor;
+
+    public ReceiptsFetcher(EthereumApiHelper ethereumApiHelper, int concurrency, int batchSize) {
+        this.ethereumApiHelper = ethereumApiHelper;
+        this.batchSize = Math.max(1, batchSize);
+        this.executor = Executors.newFixedThreadPool(Math.max(1, concurrency));
+    }
+
+    /**
+     * Fetches the receipts of the given transactions.
+     *
+     * @param txHashes the hashes of the transactions
+     * @return a map from transaction hash to receipt; transactions without receipt are not in the map
+     */
+    public Map<String, Json> fetch(List<String> txHashes) {
+        Map<String, Json> receipts = new HashMap<>();
+        if (txHashes.isEmpty()) {
+            return receipts;
+        }
+        if (txHashes.size() <= batchSize) {
+            return ethereumApiHelper.getTransactionReceipts(txHashes);
+        }
+        List<Future<Map<String, Json>>> futures = new ArrayList<>();
+        for (int from = 0; from < txHashes.size(); from += batchSize) {
+            List<String> batch = new ArrayList<>(txHashes.subList(from, Math.min(from + batchSize, txHashes.size())));
+            futures.add(executor.submit(() -> ethereumApiHelper.getTransactionReceipts(batch)));
+        }
+        for (Future<Map<String, Json>> future : futures) {
+            try {
+                receipts.putAll(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                // receipts in this batch will be fetched again in the next block
+                logger.warn(String.format("Error fetching receipts: [%s]", e.getMessage()), e);
+            }
+        }
+        return receipts;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(MAX_SHUTDOWN_MINUTES, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            logger.error("Error shutting down receipts fetcher");
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package io.slingr.endpoints.ethereum;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import io.slingr.endpoints.services.datastores.DataStore;
+import io.slingr.endpoints.utils.Json;
+import org.ethereum.crypto.ECKey;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keys of managed accounts ready to sign, indexed by address. Getting a key from the data store means
+ * decrypting it and calculating the public point, which costs much more than signing, so accounts used
+ * often are kept in memory for a while.
+ * <p>
+ * Accounts that are not found are not cached, so an account imported later is found right away.
+ */
+public class SignerCache {
+
+    private final DataStore accountsDs;
+    private final CryptoUtils cryptoUtils;
+    private final Cache<String, ECKey> keys;
+
+    public SignerCache(DataStore accountsDs, CryptoUtils cryptoUtils, long maxSize, long ttlSeconds) {
+        this.accountsDs = accountsDs;
+        this.cryptoUtils = cryptoUtils;
+        this.keys = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the key of a managed account.
+     *
+     * @param address the address of the account, with <code>0x</code>; case doesn't matter
+     * @return the key or <code>null</code> if the account is not managed by the endpoint
+     */
+    public ECKey getKey(String address) {
+        String normalizedAddress = address.toLowerCase();
+        ECKey key = keys.getIfPresent(normalizedAddress);
+        if (key == null) {
+            Json account = accountsDs.findOne(Json.map().set("address", normalizedAddress));
+            if (account == null) {
+                return null;
+            }
+            BigInteger privateKeyInteger = new BigInteger(cryptoUtils.decrypt(account.string("privateKey")), 16);
+            key = ECKey.fromPrivate(privateKeyInteger);
+            keys.put(normalizedAddress, key);
+        }
+        return key;
+    }
+
+    public void invalidate(String address) {
+        keys.invalidate(address.toLowerCase());
+    }
+
+    public long size() {
+        return keys.size();
+    }
+
+    public CacheStats getStats() {
+        return keys.stats();
+    }
+}
@@ -24,6 +24,7 @@ public class Transaction {
     public static final String STATUS_SENT = "sent";
     public static final String STATUS_TIMEOUT = "timeout";
     public static final String STATUS_REPLACED = "replaced";
+    public static final String STATUS_REJECTED = "rejected";
     public static final String APP = "app";
     public static final String ENV = "env";
 
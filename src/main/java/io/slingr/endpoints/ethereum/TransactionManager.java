@@ -1,17 +1,16 @@
 package io.slingr.endpoints.ethereum;
 
 import io.slingr.endpoints.services.AppLogs;
-import io.slingr.endpoints.services.Events;
 import io.slingr.endpoints.services.datastores.DataStore;
 import io.slingr.endpoints.services.datastores.DataStoreResponse;
 import io.slingr.endpoints.utils.Json;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 public class TransactionManager {
     private final int CLEANING_WAIT_TIME_MINUTES = 5;
@@ -22,23 +21,65 @@ public class TransactionManager {
     private final String EVENT_TX_REJECTED = "transactionRejected";
     private final String EVENT_TX_REMOVED = "transactionRemoved";
     private final String FROM = "from";
+    private final String RECEIPTS_CONCURRENCY_PROPERTY = "receiptsConcurrency";
+    private final int DEFAULT_RECEIPTS_CONCURRENCY = 4;
+    private final String[] FINAL_STATUSES = {
+            Transaction.STATUS_REMOVED,
+            Transaction.STATUS_SENT,
+            Transaction.STATUS_TIMEOUT,
+            Transaction.STATUS_REPLACED,
+            Transaction.STATUS_REJECTED
+    };
 
     private EthereumApiHelper ethereumApiHelper;
-    private Events events;
+    private EventDispatcher eventDispatcher;
     private AppLogs appLogger;
     private DataStore transactionsDs;
+    private NonceManager nonceManager;
     private final Json config;
 
-    private Map<String, Transaction> pendingTransactions = new LinkedHashMap<>();
+    private PendingTransactions pendingTransactions = new PendingTransactions();
     private ScheduledExecutorService cleanerExecutor;
-    private Lock lock = new ReentrantLock();
+    private DataStoreRetention transactionsRetention;
+    private ReceiptsFetcher receiptsFetcher;
+    // transactions whose events were queued in the dispatcher; their final status is saved once the event is sent
+    private Map<String, Transaction> dispatchingTransactions = new ConcurrentHashMap<>();
+    private Lock lock;
+    private final Metrics metrics;
+    // updated while holding the lock, so metrics can be read without it
+    private volatile int pendingCount = 0;
+    private volatile long oldestPendingTimestamp = 0;
 
-    public TransactionManager(EthereumApiHelper ethereumApiHelper, Events events, AppLogs appLogger, DataStore transactionsDs, Json config) {
+    public TransactionManager(EthereumApiHelper ethereumApiHelper, EventDispatcher eventDispatcher, AppLogs appLogger, DataStore transactionsDs, NonceManager nonceManager, Json config, Metrics metrics) {
         this.ethereumApiHelper = ethereumApiHelper;
-        this.events = events;
+        this.eventDispatcher = eventDispatcher;
         this.appLogger = appLogger;
         this.transactionsDs = transactionsDs;
+        this.nonceManager = nonceManager;
         this.config = config;
+        this.metrics = metrics;
+        this.lock = metrics.timedLock("transactions");
+        this.transactionsRetention = new DataStoreRetention("transactions", transactionsDs);
+        int receiptsConcurrency = config != null ? config.longInteger(RECEIPTS_CONCURRENCY_PROPERTY, DEFAULT_RECEIPTS_CONCURRENCY).intValue() : DEFAULT_RECEIPTS_CONCURRENCY;
+        this.receiptsFetcher = new ReceiptsFetcher(ethereumApiHelper, receiptsConcurrency, EthereumApiHelper.MAX_BATCH_SIZE);
+        registerMetrics();
+    }
+
+    private void registerMetrics() {
+        metrics.gauge("transactions.pending", () -> pendingCount);
+        metrics.gauge("transactions.oldestPendingAgeMillis", () -> oldestPendingTimestamp > 0 ? System.currentTimeMillis() - oldestPendingTimestamp : 0);
+        metrics.gauge("transactions.dispatching", () -> dispatchingTransactions.size());
+        metrics.gauge("transactions.retention", () -> Json.map()
+                .set("purged", transactionsRetention.getPurgedCount())
+                .set("lastPurged", transactionsRetention.getLastPurgedCount()));
+    }
+
+    /**
+     * Updates the values of pending transactions used by metrics. It has to be called holding the lock.
+     */
+    private void updatePendingStats() {
+        pendingCount = pendingTransactions.size();
+        oldestPendingTimestamp = pendingTransactions.getOldestTimestamp();
     }
 
     public void start() {
@@ -53,33 +94,31 @@ public class TransactionManager {
                         || Transaction.STATUS_CONFIRMED.equals(tx.string(Transaction.STATUS))
                 ) {
                     Transaction txObj = new Transaction(tx);
-                    pendingTransactions.put(txObj.getTxHash(), txObj);
+                    pendingTransactions.put(txObj);
                     pendingTxsCount++;
                 }
             }
             txsRes = transactionsDs.find(null, txsRes.getOffset(), 1000);
         }
+        lock.lock();
+        try {
+            updatePendingStats();
+        } finally {
+            lock.unlock();
+        }
         appLogger.info(String.format("[%s] transactions were loaded", pendingTxsCount));
         // execute thread to clean blocks from the database
         cleanerExecutor = Executors.newSingleThreadScheduledExecutor();
         Runnable cleanerTask = () -> {
-            lock.lock();
+            // transactions in the final statuses are not in memory anymore, so this doesn't need the lock
             try {
-                DataStoreResponse res = transactionsDs.find(null, null, 100);
-                List<Json> txs = res.getItems();
-                int count = 0;
-                for (Json tx : txs) {
-                    if (Transaction.STATUS_REMOVED.equals(tx.string(Transaction.STATUS))
-                            || Transaction.STATUS_SENT.equals(tx.string(Transaction.STATUS))
-                            || Transaction.STATUS_TIMEOUT.equals(tx.string(Transaction.STATUS))
-                            || Transaction.STATUS_REPLACED.equals(tx.string(Transaction.STATUS))) {
-                        long diff = new Date().getTime() - tx.longInteger(Transaction.TIMESTAMP);
-                        if (diff > TRANSACTION_LIFE) {
-                            transactionsDs.removeById(tx.string(Transaction.ID));
-                            count++;
-                        }
-                    }
+                long threshold = new Date().getTime() - TRANSACTION_LIFE;
+                List<Json> filters = new ArrayList<>();
+                for (String status : FINAL_STATUSES) {
+                    filters.add(Json.map().set(Transaction.STATUS, status).set(Transaction.TIMESTAMP, Json.map().set("$lt", threshold)));
                 }
+                transactionsRetention.startRun();
+                long count = transactionsRetention.purge(filters);
                 if (count > 0) {
                     appLogger.info(String.format("[%s] old transactions were removed", count));
                 } else {
@@ -87,14 +126,13 @@ public class TransactionManager {
                 }
             } catch (Exception e) {
                 appLogger.error("Error cleaning old transactions", e);
-            } finally {
-                lock.unlock();
             }
         };
         cleanerExecutor.scheduleAtFixedRate(cleanerTask, CLEANING_WAIT_TIME_MINUTES, CLEANING_WAIT_TIME_MINUTES, TimeUnit.MINUTES);
     }
 
     public void shutdown() {
+        receiptsFetcher.shutdown();
         cleanerExecutor.shutdown();
         try {
             cleanerExecutor.awaitTermination(MAX_SHUTDOWN_MINUTES, TimeUnit.MINUTES);
@@ -103,10 +141,12 @@ public class TransactionManager {
         }
     }
 
-    public void processTransactionsInBlock(Block block) {
+    public void processTransactionsInBlock(BlockContext blockContext) {
+        Block block = blockContext.getBlock();
+        List<String> txsToConfirm = new ArrayList<>();
         lock.lock();
         try {
-            List<String> transactionInBlock = getTransactionsInBlock(block);
+            Collection<String> transactionInBlock = getTransactionsInBlock(blockContext);
             // mark transactions in the new block as confirmed
             for (String txHash : transactionInBlock) {
                 if (pendingTransactions.containsKey(txHash)) {
@@ -117,44 +157,61 @@ public class TransactionManager {
                     transactionsDs.update(pendingTransaction.toJson());
                 }
             }
+            for (Transaction tx : pendingTransactions.values()) {
+                if (isReadyToSend(tx, block)) {
+                    txsToConfirm.add(tx.getTxHash());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        // receipts of all transactions that reached the confirmation blocks are fetched without holding the lock;
+        // only this thread changes the status of transactions, so they will still be ready when we get the lock again
+        Map<String, Json> receipts = receiptsFetcher.fetch(txsToConfirm);
+        // events of the block are sent together; transactions are saved with the final status after that
+        List<EventDispatcher.Event> blockEvents = new ArrayList<>();
+        List<Transaction> txsToSave = new ArrayList<>();
+        lock.lock();
+        try {
             // check which ones have to be sent and which ones have timed out
             List<String> txsToRemove = new ArrayList<>();
 
             for (String txHash : pendingTransactions.keySet()) {
                 Transaction tx = pendingTransactions.get(txHash);
-                long diff = block.getNumber() - tx.getBlockNumber();
-                if (Transaction.STATUS_CONFIRMED.equals(tx.getStatus()) && diff >= tx.getConfirmationBlocks()) {
-                    Json receipt = ethereumApiHelper.getTransactionReceipt(txHash);
+                if (isReadyToSend(tx, block)) {
+                    Json receipt = receipts.get(txHash);
                     if (receipt == null) {
                         // sometimes, for some reason, the tx has the status confirmed but then when we look for the
                         // receipt, it isn't there; we need to keep checking for this transaction in those cases
                         continue;
                     }
-                    sendEvent(EVENT_TX_CONFIRMED, tx, receipt);
+                    blockEvents.add(buildEvent(EVENT_TX_CONFIRMED, tx, receipt));
                     tx.setStatus(Transaction.STATUS_SENT);
                     tx.setReceipt(receipt);
-                    transactionsDs.update(tx.toJson());
+                    txsToSave.add(tx);
                     txsToRemove.add(txHash);
 
-                    for (String txHashReplaced : pendingTransactions.keySet()) {
-                        Transaction txReplaced = pendingTransactions.get(txHashReplaced);
-                        if (tx.getFrom().equals(txReplaced.getFrom()) && !txHashReplaced.equals(txHash) && tx.getNonce().equals(txReplaced.getNonce())) {
-                            // check if there is a tx with the same nonce that was replaced
-                            Json res = Json.map();
-                            res.set("receipt", txReplaced.getReceipt());
-                            res.set("errorCode", "replaced");
-                            res.set("errorMessage", String.format("Transaction was replaced with tx [%s]", txHash));
-                            sendEvent(EVENT_TX_REJECTED, txReplaced, res);
-                            txReplaced.setStatus(Transaction.STATUS_REPLACED);
-                            transactionsDs.update(txReplaced.toJson());
-                            txsToRemove.add(txHashReplaced);
-                        } else if (tx.getFrom().equals(txReplaced.getFrom()) && Integer.decode(txReplaced.getNonce()) < (Integer.decode(tx.getNonce()))) {
-                            // check if there is a tx with a lower nonce that will never be mined
-                            txReplaced.setStatus(Transaction.STATUS_REMOVED);
-                            transactionsDs.update(txReplaced.toJson());
-                            txsToRemove.add(txHashReplaced);
+                    // check if there is a tx with the same nonce that was replaced
+                    for (Transaction txReplaced : pendingTransactions.getWithSameNonce(tx)) {
+                        Json res = Json.map();
+                        res.set("receipt", txReplaced.getReceipt());
+                        res.set("errorCode", "replaced");
+                        res.set("errorMessage", String.format("Transaction was replaced with tx [%s]", txHash));
+                        blockEvents.add(buildEvent(EVENT_TX_REJECTED, txReplaced, res));
+                        txReplaced.setStatus(Transaction.STATUS_REPLACED);
+                        txsToSave.add(txReplaced);
+                        txsToRemove.add(txReplaced.getTxHash());
+                        // the nonce was used by a transaction not sent by the endpoint, so counters could be wrong
+                        if (txReplaced.getFrom() != null) {
+                            nonceManager.resync(txReplaced.getFrom());
                         }
                     }
+                    // check if there is a tx with a lower nonce that will never be mined
+                    for (Transaction txReplaced : pendingTransactions.getWithLowerNonce(tx)) {
+                        txReplaced.setStatus(Transaction.STATUS_REMOVED);
+                        transactionsDs.update(txReplaced.toJson());
+                        txsToRemove.add(txReplaced.getTxHash());
+                    }
                 } else if (Transaction.STATUS_PENDING.equals(tx.getStatus())) {
                     // check if the transaction has timed out
                     if (tx.getTimeout() < new Date().getTime()) {
@@ -163,9 +220,9 @@ public class TransactionManager {
                         res.set("errorCode", "timeout");
                         long minAsMil = tx.getTimeout() + (1000 * 20) - tx.getTimestamp(); // plus 20 secs in order to round in minutes.
                         res.set("error", String.format("Transaction could not be confirmed after %s minutes", TimeUnit.MILLISECONDS.toMinutes(minAsMil)));
-                        sendEvent(EVENT_TX_REJECTED, tx, res);
+                        blockEvents.add(buildEvent(EVENT_TX_REJECTED, tx, res));
                         tx.setStatus(Transaction.STATUS_TIMEOUT);
-                        transactionsDs.update(tx.toJson());
+                        txsToSave.add(tx);
                         txsToRemove.add(txHash);
                     }
                 }
@@ -174,47 +231,94 @@ public class TransactionManager {
             for (String txHash : txsToRemove) {
                 pendingTransactions.remove(txHash);
             }
+            for (Transaction tx : txsToSave) {
+                dispatchingTransactions.put(tx.getTxHash(), tx);
+            }
+            updatePendingStats();
         } finally {
             lock.unlock();
         }
+        if (!blockEvents.isEmpty()) {
+            // if the endpoint stops before events are sent, transactions are still pending in the data store
+            // and will be processed again when it restarts
+            eventDispatcher.dispatch(blockEvents, () -> saveDispatchedTransactions(txsToSave), () -> forgetDispatchedTransactions(txsToSave));
+        }
     }
 
-    private void sendEvent(String event, Transaction transaction, Json res) {
-        sendEvent(event, transaction, res, transaction.getFunctionId());
+    private void saveDispatchedTransactions(List<Transaction> txs) {
+        for (Transaction tx : txs) {
+            try {
+                transactionsDs.update(tx.toJson());
+            } catch (Exception e) {
+                appLogger.error(String.format("There were errors trying to update transaction [%s]", tx.getTxHash()), e);
+            } finally {
+                dispatchingTransactions.remove(tx.getTxHash());
+            }
+        }
+    }
+
+    private void forgetDispatchedTransactions(List<Transaction> txs) {
+        // the final status is not saved, so they are processed again when the endpoint restarts
+        for (Transaction tx : txs) {
+            dispatchingTransactions.remove(tx.getTxHash());
+        }
     }
 
-    private void sendEvent(String event, Transaction transaction, Json res, String functionId) {
+    private boolean isReadyToSend(Transaction tx, Block block) {
+        long diff = block.getNumber() - tx.getBlockNumber();
+        return Transaction.STATUS_CONFIRMED.equals(tx.getStatus()) && diff >= tx.getConfirmationBlocks();
+    }
+
+    private EventDispatcher.Event buildEvent(String event, Transaction transaction, Json res) {
+        return buildEvent(event, transaction, res, transaction.getFunctionId());
+    }
+
+    private EventDispatcher.Event buildEvent(String event, Transaction transaction, Json res, String functionId) {
         if (isSharedEndpoint()) {
-            events.send(event, transaction.getApp(), transaction.getEnv(), res, functionId);
+            return new EventDispatcher.Event(event, transaction.getApp(), transaction.getEnv(), res, functionId);
         } else {
-            events.send(event, res, functionId);
+            return new EventDispatcher.Event(event, res, functionId);
         }
     }
 
     public void removeTransactionsInBlock(Block block) {
+        List<Transaction> removedTransactions = new ArrayList<>();
         lock.lock();
         try {
             DataStoreResponse res = transactionsDs.find(Json.map().set(Transaction.BLOCK_HASH, block.getHash()));
             List<Json> transactionsToRemove = res.getItems();
             for (Json transactionJson : transactionsToRemove) {
                 Transaction transaction = new Transaction(transactionJson);
-                if (Transaction.STATUS_CONFIRMED.equals(transaction.getStatus())) {
+                Transaction dispatchingTransaction = dispatchingTransactions.get(transaction.getTxHash());
+                if (dispatchingTransaction != null && Transaction.STATUS_SENT.equals(dispatchingTransaction.getStatus())) {
+                    // the confirmation is queued but not saved yet; the removed event will be sent after it
+                    removedTransactions.add(dispatchingTransaction);
+                } else if (dispatchingTransaction != null) {
+                    // it was rejected and the event is queued, there is nothing to revert
+                    continue;
+                } else if (Transaction.STATUS_CONFIRMED.equals(transaction.getStatus())) {
                     transaction.setReceipt(null);
                     transaction.setBlockHash(null);
                     transaction.setBlockNumber(0);
                     transaction.setStatus(Transaction.STATUS_PENDING);
                     transactionsDs.update(transaction.toJson());
-                    pendingTransactions.put(transaction.getTxHash(), transaction);
+                    pendingTransactions.put(transaction);
                 } else if (Transaction.STATUS_SENT.equals(transaction.getStatus())) {
-                    sendEvent(EVENT_TX_REMOVED, transaction, transaction.getReceipt(), null);
-                    transaction.setStatus(Transaction.STATUS_REMOVED);
-                    transactionsDs.update(transaction.toJson());
+                    removedTransactions.add(transaction);
                     pendingTransactions.remove(transaction.getTxHash());
                 }
             }
+            updatePendingStats();
         } finally {
             lock.unlock();
         }
+        // the dispatcher waits if its queue is full, so events are queued without holding the lock
+        for (Transaction transaction : removedTransactions) {
+            eventDispatcher.dispatch(Collections.singletonList(buildEvent(EVENT_TX_REMOVED, transaction, transaction.getReceipt(), null)), () -> {
+                transaction.setStatus(Transaction.STATUS_REMOVED);
+                saveDispatchedTransactions(Collections.singletonList(transaction));
+            });
+        }
     }
 
     public void registerTransaction(String txHash, String nonce, String from, String functionId, long timestamp, long confirmationTimeout, long confirmationBlocks) {
@@ -223,18 +327,95 @@ public class TransactionManager {
             Transaction tx = new Transaction(txHash, nonce, from, functionId, timestamp, confirmationTimeout, confirmationBlocks);
             Json txJson = transactionsDs.save(tx.toJson());
             tx.setId(txJson.string(Transaction.ID));
-            pendingTransactions.put(txHash, tx);
+            pendingTransactions.put(tx);
+            updatePendingStats();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Registers many transactions at once. Documents are saved without holding the lock, which is taken once to
+     * start following all of them, so this has to be called before the transactions are sent to the network.
+     * Transactions that cannot be saved are rejected and are not followed.
+     *
+     * @param txs the transactions to register
+     * @return the transactions that could not be registered
+     */
+    public List<Transaction> registerTransactions(List<Transaction> txs) {
+        List<Transaction> registeredTxs = new ArrayList<>();
+        List<Transaction> failedTxs = new ArrayList<>();
+        for (Transaction tx : txs) {
+            try {
+                Json txJson = transactionsDs.save(tx.toJson());
+                tx.setId(txJson.string(Transaction.ID));
+                registeredTxs.add(tx);
+            } catch (Exception e) {
+                appLogger.error(String.format("There were errors trying to register transaction [%s]", tx.getTxHash()), e);
+                failedTxs.add(tx);
+            }
+        }
+        lock.lock();
+        try {
+            for (Transaction tx : registeredTxs) {
+                pendingTransactions.put(tx);
+            }
+            updatePendingStats();
         } finally {
             lock.unlock();
         }
+        for (Transaction tx : failedTxs) {
+            // there is nothing to save, the app only needs to know the transaction won't be followed
+            tx.setStatus(Transaction.STATUS_REJECTED);
+            eventDispatcher.dispatch(Collections.singletonList(buildEvent(EVENT_TX_REJECTED, tx, Json.map()
+                    .set("errorCode", "internalError")
+                    .set("errorMessage", "Transaction could not be registered, so it was not sent"))), null);
+        }
+        return failedTxs;
     }
 
-    private List<String> getTransactionsInBlock(Block block) {
-        Json res = ethereumApiHelper.getBlockByHash(block.getHash(), false);
+    /**
+     * Stops following a registered transaction that could not be sent to the network. The rejected event is
+     * sent to the function that registered it.
+     *
+     * @param txHash the hash of the transaction
+     * @param res the data of the event, with <code>errorCode</code> and <code>errorMessage</code>
+     */
+    public void rejectTransaction(String txHash, Json res) {
+        Transaction tx;
+        lock.lock();
+        try {
+            tx = pendingTransactions.get(txHash);
+            if (tx == null || !Transaction.STATUS_PENDING.equals(tx.getStatus())) {
+                // it was confirmed anyway, so the node got it
+                return;
+            }
+            tx.setStatus(Transaction.STATUS_REJECTED);
+            pendingTransactions.remove(txHash);
+            dispatchingTransactions.put(txHash, tx);
+            updatePendingStats();
+        } finally {
+            lock.unlock();
+        }
+        List<Transaction> rejectedTransactions = Collections.singletonList(tx);
+        eventDispatcher.dispatch(Collections.singletonList(buildEvent(EVENT_TX_REJECTED, tx, res)), () -> saveDispatchedTransactions(rejectedTransactions),
+                () -> forgetDispatchedTransactions(rejectedTransactions));
+    }
+
+    private Collection<String> getTransactionsInBlock(BlockContext blockContext) {
+        if (blockContext.hasTransactions()) {
+            return blockContext.getTransactionHashes();
+        }
+        // the block doesn't come from the node, so we need to fetch it
+        Json res = ethereumApiHelper.getBlockByHash(blockContext.getHash(), false);
         List<String> transactions = res != null && res.strings("transactions") != null ? res.strings("transactions") : new ArrayList<>();
         return transactions;
     }
 
+    public DataStoreRetention getRetention() {
+        return transactionsRetention;
+    }
+
     private boolean isSharedEndpoint() {
         return config != null && config.bool("shared", false);
     }
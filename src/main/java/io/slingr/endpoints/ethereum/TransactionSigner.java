@@ -0,0 +1,122 @@
+package io.slingr.endpoints.ethereum;
+
+import io.slingr.endpoints.utils.Json;
+import org.apache.commons.lang.StringUtils;
+import org.ethereum.crypto.ECKey;
+import org.spongycastle.util.encoders.Hex;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.ethereum.util.ByteUtil.longToBytesNoLeadZeroes;
+
+/**
+ * Signs transactions with the keys of managed accounts, which are taken from the {@link SignerCache}.
+ * <p>
+ * When many transactions are signed at once, the key of each account is resolved once before signing,
+ * so transactions can be signed in parallel without going to the cache or the data store.
+ */
+public class TransactionSigner {
+
+    // signing is much more expensive than encoding, so it is worth going parallel with fewer items
+    private final int MIN_TRANSACTIONS_TO_SIGN_IN_PARALLEL = 8;
+
+    private final SignerCache signerCache;
+    private final EthereumHelper ethereumHelper;
+
+    public TransactionSigner(SignerCache signerCache, EthereumHelper ethereumHelper) {
+        this.signerCache = signerCache;
+        this.ethereumHelper = ethereumHelper;
+    }
+
+    /**
+     * Signs a transaction with the key of the account in <code>from</code>.
+     *
+     * @param transaction the fields of the transaction: from, nonce, gasPrice, gas, to, value, data and netId
+     * @return the signed transaction, RLP-encoded, with <code>0x</code>
+     * @throws IllegalArgumentException if the address is missing or it is not managed by the endpoint
+     */
+    public String sign(Json transaction) {
+        String fromAddress = getFromAddress(transaction);
+        return sign(transaction, getKey(fromAddress, signerCache.getKey(fromAddress)));
+    }
+
+    /**
+     * Signs many transactions, which can belong to different accounts.
+     *
+     * @param transactions the transactions to sign, with the same fields as in {@link #sign(Json)}
+     * @param parallel if transactions can be signed in parallel
+     * @return for each transaction, in the same order, a map with the signed transaction in <code>data</code>
+     * or the error in <code>error</code>
+     */
+    public List<Json> signAll(List<Json> transactions, boolean parallel) {
+        Map<String, ECKey> keys = new HashMap<>();
+        // if the key of an account cannot be loaded, only the transactions of that account fail
+        Map<String, String> keyErrors = new HashMap<>();
+        for (Json transaction : transactions) {
+            String fromAddress = transaction.string("from");
+            if (StringUtils.isNotBlank(fromAddress)) {
+                String normalizedAddress = normalizeAddress(fromAddress);
+                if (!keys.containsKey(normalizedAddress) && !keyErrors.containsKey(normalizedAddress)) {
+                    try {
+                        keys.put(normalizedAddress, signerCache.getKey(normalizedAddress));
+                    } catch (Exception e) {
+                        keyErrors.put(normalizedAddress, String.format("Key of address [%s] could not be loaded: %s", fromAddress, e.getMessage()));
+                    }
+                }
+            }
+        }
+        // threads only read the maps of keys and errors
+        return ethereumHelper.processItems(transactions, parallel, MIN_TRANSACTIONS_TO_SIGN_IN_PARALLEL, i -> {
+            Json transaction = transactions.get(i);
+            try {
+                String fromAddress = getFromAddress(transaction);
+                String keyError = keyErrors.get(fromAddress.toLowerCase());
+                if (keyError != null) {
+                    return Json.map().set("error", keyError);
+                }
+                ECKey key = getKey(fromAddress, keys.get(fromAddress.toLowerCase()));
+                return Json.map().set("data", sign(transaction, key));
+            } catch (Exception e) {
+                return Json.map().set("error", String.valueOf(e.getMessage()));
+            }
+        });
+    }
+
+    private ECKey getKey(String fromAddress, ECKey key) {
+        if (key == null) {
+            throw new IllegalArgumentException(String.format("Address [%s] is not managed", fromAddress));
+        }
+        return key;
+    }
+
+    private String getFromAddress(Json transaction) {
+        String fromAddress = transaction.string("from");
+        if (StringUtils.isBlank(fromAddress)) {
+            throw new IllegalArgumentException("From address must be provided");
+        }
+        if (!fromAddress.startsWith("0x")) {
+            fromAddress = "0x" + fromAddress;
+        }
+        return fromAddress;
+    }
+
+    private String normalizeAddress(String address) {
+        return (address.startsWith("0x") ? address : "0x" + address).toLowerCase();
+    }
+
+    private String sign(Json body, ECKey key) {
+        org.ethereum.core.Transaction tx = new org.ethereum.core.Transaction(
+                body.isEmpty("nonce") ? null : longToBytesNoLeadZeroes(Long.parseUnsignedLong(ethereumHelper.removeHexStringToData(body.string("nonce")), 16)),
+                body.isEmpty("gasPrice") ? null : longToBytesNoLeadZeroes(Long.parseUnsignedLong(ethereumHelper.removeHexStringToData(body.string("gasPrice")), 16)),
+                body.isEmpty("gas") ? null : longToBytesNoLeadZeroes(Long.parseUnsignedLong(ethereumHelper.removeHexStringToData(body.string("gas")), 16)),
+                body.isEmpty("to") ? null : Hex.decode(ethereumHelper.removeHexStringToData(body.string("to"))),
+                body.isEmpty("value") ? longToBytesNoLeadZeroes(Long.valueOf(0)) : longToBytesNoLeadZeroes(Long.parseUnsignedLong(ethereumHelper.removeHexStringToData(body.string("value")), 16)),
+                body.isEmpty("data") ? null : Hex.decode(ethereumHelper.removeHexStringToData(body.string("data"))),
+                body.integer("netId")
+        );
+        tx.sign(key);
+        return "0x" + Hex.toHexString(tx.getEncoded());
+    }
+}
@@ -0,0 +1,313 @@
+package io.slingr.endpoints.ethereum;
+
+import io.slingr.endpoints.services.AppLogs;
+import io.slingr.endpoints.utils.Json;
+import org.ethereum.crypto.HashUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends signed transactions to the network in background. Transactions are queued and several threads take
+ * them from the queue and send them in batches of <code>eth_sendRawTransaction</code> requests, so while one
+ * batch is waiting for the node the next one is being sent.
+ * <p>
+ * The hash of each transaction is calculated from the payload, so it is returned right away. Transactions are
+ * registered in the {@link TransactionManager} by the sender threads, all the transactions of a batch at once,
+ * before they are sent, and the app gets the <code>transactionConfirmed</code> or <code>transactionRejected</code>
+ * events as with any other transaction. Errors that could go away, like the node not answering or rate limits,
+ * are retried with an exponential backoff; if the node doesn't accept the transaction or it cannot be sent after
+ * several attempts, it is rejected.
+ */
+public class TransactionSubmitter {
+    private static final Logger logger = LoggerFactory.getLogger(TransactionSubmitter.class);
+
+    private final int MAX_ATTEMPTS = 5;
+    private final long INITIAL_BACKOFF_MILLIS = 500;
+    private final long MAX_BACKOFF_MILLIS = 30000;
+    private final int MAX_SHUTDOWN_MINUTES = 5;
+    private final String SUBMITTER_CONCURRENCY_PROPERTY = "submitterConcurrency";
+    private final int DEFAULT_SUBMITTER_CONCURRENCY = 2;
+    private final String SUBMITTER_BATCH_SIZE_PROPERTY = "submitterBatchSize";
+    // errors of nodes that already have the transaction, which means it was sent in a previous attempt
+    private static final String[] KNOWN_TRANSACTION_ERRORS = {"already known", "known transaction", "already imported", "already exists"};
+    // errors that could go away if the transaction is sent again later
+    private static final String[] TRANSIENT_ERRORS = {"rate limit", "too many requests", "limit exceeded", "txpool is full",
+            "transaction pool is full", "timeout", "timed out", "busy"};
+    // errors of nodes that have a transaction with the same nonce; when they come after an attempt whose response
+    // was lost, the node most likely got this transaction in that attempt, so it is left pending and it will be
+    // confirmed or rejected when it times out
+    private static final String[] USED_NONCE_ERRORS = {"nonce too low", "replacement transaction underpriced", "already used"};
+
+    private final EthereumApiHelper ethereumApiHelper;
+    private final TransactionManager transactionManager;
+    private final NonceManager nonceManager;
+    private final AppLogs appLogger;
+    private final Metrics metrics;
+    private final int concurrency;
+    private final int batchSize;
+
+    private final BlockingQueue<Submission> queue = new LinkedBlockingQueue<>();
+    private final ScheduledExecutorService retryExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final List<Thread> senderThreads = new ArrayList<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile boolean stopped = false;
+
+    public TransactionSubmitter(EthereumApiHelper ethereumApiHelper, TransactionManager transactionManager, NonceManager nonceManager,
+                                AppLogs appLogger, Json config, Metrics metrics) {
+        this.ethereumApiHelper = ethereumApiHelper;
+        this.transactionManager = transactionManager;
+        this.nonceManager = nonceManager;
+        this.appLogger = appLogger;
+        this.metrics = metrics;
+        this.concurrency = config != null ? config.longInteger(SUBMITTER_CONCURRENCY_PROPERTY, DEFAULT_SUBMITTER_CONCURRENCY).intValue() : DEFAULT_SUBMITTER_CONCURRENCY;
+        // nodes that don't support batches can be used with a batch size of one
+        int configuredBatchSize = config != null ? config.longInteger(SUBMITTER_BATCH_SIZE_PROPERTY, EthereumApiHelper.MAX_BATCH_SIZE).intValue() : EthereumApiHelper.MAX_BATCH_SIZE;
+        this.batchSize = Math.max(1, Math.min(configuredBatchSize, EthereumApiHelper.MAX_BATCH_SIZE));
+        metrics.gauge("submitter.queued", () -> queue.size());
+        metrics.gauge("submitter.inFlight", () -> inFlight.get());
+    }
+
+    public void start() {
+        for (int i = 0; i < Math.max(1, concurrency); i++) {
+            Thread thread = new Thread(this::sendLoop, "transactions-submitter-" + i);
+            senderThreads.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops accepting transactions and waits until the queued ones are sent. Transactions waiting to be retried
+     * are not sent; they are still pending, so they will be rejected when they time out.
+     */
+    public void shutdown() {
+        stopped = true;
+        List<Runnable> retries = retryExecutor.shutdownNow();
+        if (!retries.isEmpty()) {
+            appLogger.info(String.format("[%s] transactions waiting to be retried were not sent", retries.size()));
+        }
+        try {
+            for (Thread thread : senderThreads) {
+                thread.join(TimeUnit.MINUTES.toMillis(MAX_SHUTDOWN_MINUTES));
+            }
+        } catch (InterruptedException e) {
+            appLogger.error("Error shutting down transactions submitter");
+        }
+    }
+
+    /**
+     * Queues signed transactions to be registered and sent.
+     *
+     * @param transactions each one with the signed transaction in <code>data</code> and optionally its sender in
+     *                     <code>from</code>; if it isn't there it is taken from the signature
+     * @param functionId the function that gets the confirmed and rejected events
+     * @param timeout the time until transactions are rejected if they weren't confirmed, in milliseconds since epoch
+     * @param confirmationBlocks the number of blocks to wait before confirming transactions
+     * @return for each transaction, in the same order, a map with the hash in <code>txHash</code> or the error
+     * in <code>error</code> if it couldn't be decoded
+     */
+    public List<Json> submit(List<Json> transactions, String functionId, long timeout, long confirmationBlocks) {
+        if (stopped) {
+            throw new IllegalStateException("Submitter is stopped");
+        }
+        long timestamp = System.currentTimeMillis();
+        List<Json> results = new ArrayList<>();
+        for (Json transaction : transactions) {
+            try {
+                Submission submission = decode(transaction, functionId, timestamp, timeout, confirmationBlocks);
+                queue.add(submission);
+                results.add(Json.map().set("txHash", submission.txHash));
+            } catch (Exception e) {
+                results.add(Json.map().set("error", String.valueOf(e.getMessage())));
+            }
+        }
+        return results;
+    }
+
+    private Submission decode(Json transaction, String functionId, long timestamp, long timeout, long confirmationBlocks) {
+        String data = transaction.string("data");
+        if (data == null || data.isEmpty()) {
+            throw new IllegalArgumentException("Signed transaction must be provided");
+        }
+        byte[] encoded = Hex.decode(data.startsWith("0x") ? data.substring(2) : data);
+        org.ethereum.core.Transaction tx = new org.ethereum.core.Transaction(encoded);
+        String nonce = "0x" + new BigInteger(1, tx.getNonce()).toString(16);
+        String from = transaction.string("from");
+        if (from == null || from.isEmpty()) {
+            // recovering the sender is expensive, so it is only done when the app didn't send it
+            from = "0x" + Hex.toHexString(tx.getSender());
+        }
+        String txHash = "0x" + Hex.toHexString(HashUtil.sha3(encoded));
+        Transaction registration = new Transaction(txHash, nonce, from.toLowerCase(), functionId, timestamp, timeout, confirmationBlocks);
+        return new Submission("0x" + Hex.toHexString(encoded), registration);
+    }
+
+    private void sendLoop() {
+        List<Submission> batch = new ArrayList<>();
+        while (!stopped || !queue.isEmpty()) {
+            try {
+                Submission first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                inFlight.addAndGet(batch.size());
+                for (Submission submission : batch) {
+                    submission.attempts++;
+                }
+                send(register(batch));
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                logger.error(String.format("Error sending transactions: [%s]", e.getMessage()), e);
+                for (Submission submission : batch) {
+                    retry(submission, e.getMessage());
+                }
+            } finally {
+                inFlight.addAndGet(-batch.size());
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Registers the transactions of the batch that were not registered in a previous attempt.
+     *
+     * @return the transactions that were registered and can be sent
+     */
+    private List<Submission> register(List<Submission> batch) {
+        List<Transaction> registrations = new ArrayList<>();
+        for (Submission submission : batch) {
+            if (!submission.registered) {
+                registrations.add(submission.registration);
+            }
+        }
+        if (registrations.isEmpty()) {
+            return batch;
+        }
+        List<Transaction> failed = transactionManager.registerTransactions(registrations);
+        List<Submission> registered = new ArrayList<>();
+        for (Submission submission : batch) {
+            if (failed.contains(submission.registration)) {
+                // it was rejected by the manager; the nonce won't be used, so it is given again and the counter
+                // is checked with the node
+                metrics.increment("submitter.rejected");
+                releaseNonce(submission);
+            } else {
+                submission.registered = true;
+                registered.add(submission);
+            }
+        }
+        return registered;
+    }
+
+    private void send(List<Submission> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (batch.size() == 1) {
+            handleResponse(batch.get(0), ethereumApiHelper.sendRawTransaction(batch.get(0).data));
+            return;
+        }
+        List<Json> bodies = new ArrayList<>();
+        for (Submission submission : batch) {
+            bodies.add(ethereumApiHelper.getBody("eth_sendRawTransaction", Json.list().push(submission.data)));
+        }
+        List<Json> responses = ethereumApiHelper.postBatch(bodies);
+        for (int i = 0; i < batch.size(); i++) {
+            handleResponse(batch.get(i), responses.get(i));
+        }
+    }
+
+    private void handleResponse(Submission submission, Json response) {
+        if (response == null) {
+            retry(submission, "There was no response from the node");
+            return;
+        }
+        if (response.string("result") != null) {
+            if (!submission.txHash.equalsIgnoreCase(response.string("result"))) {
+                logger.warn(String.format("Node returned hash [%s] for transaction [%s]", response.string("result"), submission.txHash));
+            }
+            metrics.increment("submitter.sent");
+            return;
+        }
+        Json error = response.json("error");
+        String message = error != null && error.string("message") != null ? error.string("message") : "Unknown error";
+        if (containsAny(message, KNOWN_TRANSACTION_ERRORS)) {
+            metrics.increment("submitter.sent");
+        } else if (submission.attempts > 1 && containsAny(message, USED_NONCE_ERRORS)) {
+            logger.warn(String.format("Transaction [%s] was probably sent in a previous attempt, it is left pending: [%s]", submission.txHash, message));
+            metrics.increment("submitter.possiblySent");
+        } else if (containsAny(message, TRANSIENT_ERRORS)) {
+            retry(submission, message);
+        } else {
+            reject(submission, message);
+        }
+    }
+
+    private void retry(Submission submission, String message) {
+        if (submission.attempts >= MAX_ATTEMPTS || stopped) {
+            reject(submission, String.format("Transaction could not be sent after [%s] attempts: %s", submission.attempts, message));
+            return;
+        }
+        long backoff = Math.min(INITIAL_BACKOFF_MILLIS << (submission.attempts - 1), MAX_BACKOFF_MILLIS);
+        logger.warn(String.format("Error sending transaction [%s], retrying in [%s] ms: [%s]", submission.txHash, backoff, message));
+        metrics.increment("submitter.retries");
+        retryExecutor.schedule(() -> queue.add(submission), backoff, TimeUnit.MILLISECONDS);
+    }
+
+    private void reject(Submission submission, String message) {
+        metrics.increment("submitter.rejected");
+        logger.warn(String.format("Transaction [%s] was rejected: [%s]", submission.txHash, message));
+        transactionManager.rejectTransaction(submission.txHash, Json.map()
+                .set("errorCode", "invalidNetwork")
+                .set("errorMessage", "Cannot send transaction to the Ethereum network: " + message));
+        // the nonce could have been used or not, so it is given again unless the node already has it
+        releaseNonce(submission);
+    }
+
+    private void releaseNonce(Submission submission) {
+        String nonce = submission.registration.getNonce();
+        nonceManager.release(submission.from, Long.parseUnsignedLong(nonce.substring(2), 16));
+        // the counter is checked with the node, reservations of transactions still being sent are kept
+        nonceManager.resync(submission.from);
+    }
+
+    private boolean containsAny(String message, String[] values) {
+        String lowerCaseMessage = message.toLowerCase();
+        for (String value : values) {
+            if (lowerCaseMessage.contains(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Submission {
+        private final String data;
+        private final String txHash;
+        private final String from;
+        private final Transaction registration;
+        // only changed by the thread sending the transaction
+        private int attempts = 0;
+        private boolean registered = false;
+
+        Submission(String data, Transaction registration) {
+            this.data = data;
+            this.txHash = registration.getTxHash();
+            this.from = registration.getFrom();
+            this.registration = registration;
+        }
+    }
+}
@@ -18,6 +18,7 @@
 package org.ethereum.crypto;
 
 //import org.ethereum.config.SystemProperties;
+import org.ethereum.crypto.cryptohash.FastKeccak256;
 import org.ethereum.crypto.jce.SpongyCastleProvider;
 //import org.ethereum.util.RLP;
 import org.ethereum.util.RLP;
@@ -29,6 +30,7 @@ import org.spongycastle.crypto.digests.RIPEMD160Digest;
 import org.spongycastle.util.encoders.Hex;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.Provider;
@@ -51,6 +53,14 @@ public class HashUtil {
     private static final String HASH_256_ALGORITHM_NAME;
     private static final String HASH_512_ALGORITHM_NAME;
 
+    public static final int HASH_256_LENGTH = 32;
+    private static final int BUFFER_CHUNK_SIZE = 1024;
+
+    // looking up the digest in the provider and allocating its state is more expensive than hashing
+    // small inputs, so each thread keeps its own engine and reuses it
+    private static final ThreadLocal<FastKeccak256> KECCAK_256 = ThreadLocal.withInitial(FastKeccak256::new);
+    private static final ThreadLocal<byte[]> BUFFER_CHUNK = ThreadLocal.withInitial(() -> new byte[BUFFER_CHUNK_SIZE]);
+
     static {
 //        SystemProperties props = SystemProperties.getDefault();
         Security.addProvider(SpongyCastleProvider.getInstance());
@@ -81,29 +91,14 @@ public class HashUtil {
     }
 
     public static byte[] sha3(byte[] input) {
-        MessageDigest digest;
-        try {
-            digest = MessageDigest.getInstance(HASH_256_ALGORITHM_NAME, CRYPTO_PROVIDER);
-            digest.update(input);
-            return digest.digest();
-        } catch (NoSuchAlgorithmException e) {
-            LOG.error("Can't find such algorithm", e);
-            throw new RuntimeException(e);
-        }
-
+        return sha3(input, 0, input.length);
     }
 
     public static byte[] sha3(byte[] input1, byte[] input2) {
-        MessageDigest digest;
-        try {
-            digest = MessageDigest.getInstance(HASH_256_ALGORITHM_NAME, CRYPTO_PROVIDER);
-            digest.update(input1, 0, input1.length);
-            digest.update(input2, 0, input2.length);
-            return digest.digest();
-        } catch (NoSuchAlgorithmException e) {
-            LOG.error("Can't find such algorithm", e);
-            throw new RuntimeException(e);
-        }
+        FastKeccak256 digest = keccak256();
+        digest.update(input1, 0, input1.length);
+        digest.update(input2, 0, input2.length);
+        return digest.digest();
     }
 
     /**
@@ -118,10 +113,93 @@ public class HashUtil {
      * @return - keccak hash of the chunk
      */
     public static byte[] sha3(byte[] input, int start, int length) {
+        byte[] output = new byte[HASH_256_LENGTH];
+        sha3(input, start, length, output, 0);
+        return output;
+    }
+
+    /**
+     * hashing chunk of the data into a given array, so no array is allocated for the result
+     *
+     * @param input
+     *            - data for hash
+     * @param start
+     *            - start of hashing chunk
+     * @param length
+     *            - length of hashing chunk
+     * @param output
+     *            - array where the hash is written
+     * @param outputOffset
+     *            - position in the output where the 32 bytes of the hash start
+     */
+    public static void sha3(byte[] input, int start, int length, byte[] output, int outputOffset) {
+        if (output.length - outputOffset < HASH_256_LENGTH) {
+            throw new IllegalArgumentException("Output must have room for " + HASH_256_LENGTH + " bytes");
+        }
+        FastKeccak256 digest = keccak256();
+        digest.update(input, start, length);
+        digest.digest(output, outputOffset);
+    }
+
+    /**
+     * @param input
+     *            - data for hashing; the remaining bytes are hashed and the position is moved to the limit
+     * @return - keccak hash of the data
+     */
+    public static byte[] sha3(ByteBuffer input) {
+        byte[] output = new byte[HASH_256_LENGTH];
+        sha3(input, output, 0);
+        return output;
+    }
+
+    /**
+     * @param input
+     *            - data for hashing; the remaining bytes are hashed and the position is moved to the limit
+     * @param output
+     *            - array where the hash is written
+     * @param outputOffset
+     *            - position in the output where the 32 bytes of the hash start
+     */
+    public static void sha3(ByteBuffer input, byte[] output, int outputOffset) {
+        if (output.length - outputOffset < HASH_256_LENGTH) {
+            throw new IllegalArgumentException("Output must have room for " + HASH_256_LENGTH + " bytes");
+        }
+        FastKeccak256 digest = keccak256();
+        if (input.hasArray()) {
+            digest.update(input.array(), input.arrayOffset() + input.position(), input.remaining());
+            input.position(input.limit());
+        } else {
+            // direct buffers don't expose an array, so they are copied by chunks
+            byte[] chunk = BUFFER_CHUNK.get();
+            while (input.hasRemaining()) {
+                int length = Math.min(chunk.length, input.remaining());
+                input.get(chunk, 0, length);
+                digest.update(chunk, 0, length);
+            }
+        }
+        digest.digest(output, outputOffset);
+    }
+
+    /**
+     * Returns the Keccak-256 engine of the current thread, ready to be used. It must not be shared with
+     * other threads, and {@code digest()} has to be called before using it again from the same thread.
+     */
+    private static FastKeccak256 keccak256() {
+        FastKeccak256 digest = KECCAK_256.get();
+        // if a previous hash failed in the middle the engine could have some data in it
+        digest.reset();
+        return digest;
+    }
+
+    /**
+     * Same as {@link #sha3(byte[])} but looking up the digest in the crypto provider on each call.
+     * It is kept to compare against the reusable engines.
+     */
+    public static byte[] sha3WithProvider(byte[] input) {
         MessageDigest digest;
         try {
             digest = MessageDigest.getInstance(HASH_256_ALGORITHM_NAME, CRYPTO_PROVIDER);
-            digest.update(input, start, length);
+            digest.update(input);
             return digest.digest();
         } catch (NoSuchAlgorithmException e) {
             LOG.error("Can't find such algorithm", e);
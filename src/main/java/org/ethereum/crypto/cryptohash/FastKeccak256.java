@@ -0,0 +1,242 @@
+package org.ethereum.crypto.cryptohash;
+
+/**
+ * Keccak-256 as used by Ethereum (original Keccak padding, not SHA3-256), optimized for hashing many
+ * small inputs:
+ * <ul>
+ *     <li>the permutation keeps the 25 lanes in local variables and the rounds are unrolled by lane</li>
+ *     <li>full blocks are absorbed directly from the input, only partial blocks are copied to the buffer</li>
+ *     <li>nothing is allocated after the instance is created, unless {@link #digest()} is used</li>
+ * </ul>
+ * Results are the same as {@link Keccak256}. Instances are not thread-safe.
+ */
+public final class FastKeccak256 {
+
+    public static final int DIGEST_LENGTH = 32;
+    // 1600 bits of state minus twice the output size
+    private static final int RATE = 136;
+    private static final int RATE_LANES = RATE / 8;
+
+    private static final long[] ROUND_CONSTANTS = {
+            0x0000000000000001L, 0x0000000000008082L, 0x800000000000808aL, 0x8000000080008000L,
+            0x000000000000808bL, 0x0000000080000001L, 0x8000000080008081L, 0x8000000000008009L,
+            0x000000000000008aL, 0x0000000000000088L, 0x0000000080008009L, 0x000000008000000aL,
+            0x000000008000808bL, 0x800000000000008bL, 0x8000000000008089L, 0x8000000000008003L,
+            0x8000000000008002L, 0x8000000000000080L, 0x000000000000800aL, 0x800000008000000aL,
+            0x8000000080008081L, 0x8000000000008080L, 0x0000000080000001L, 0x8000000080008008L
+    };
+
+    private final long[] state = new long[25];
+    private final byte[] buffer = new byte[RATE];
+    private int bufferLength = 0;
+
+    public void reset() {
+        for (int i = 0; i < 25; i++) {
+            state[i] = 0;
+        }
+        bufferLength = 0;
+    }
+
+    public void update(byte input) {
+        buffer[bufferLength++] = input;
+        if (bufferLength == RATE) {
+            absorb(buffer, 0);
+            bufferLength = 0;
+        }
+    }
+
+    public void update(byte[] input) {
+        update(input, 0, input.length);
+    }
+
+    public void update(byte[] input, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > input.length) {
+            throw new IndexOutOfBoundsException(String.format("Invalid offset [%s] and length [%s] for input of length [%s]", offset, length, input.length));
+        }
+        if (bufferLength > 0) {
+            int copyLength = Math.min(RATE - bufferLength, length);
+            System.arraycopy(input, offset, buffer, bufferLength, copyLength);
+            bufferLength += copyLength;
+            offset += copyLength;
+            length -= copyLength;
+            if (bufferLength < RATE) {
+                return;
+            }
+            absorb(buffer, 0);
+            bufferLength = 0;
+        }
+        while (length >= RATE) {
+            absorb(input, offset);
+            offset += RATE;
+            length -= RATE;
+        }
+        if (length > 0) {
+            System.arraycopy(input, offset, buffer, 0, length);
+            bufferLength = length;
+        }
+    }
+
+    public byte[] digest() {
+        byte[] output = new byte[DIGEST_LENGTH];
+        digest(output, 0);
+        return output;
+    }
+
+    /**
+     * Writes the hash in the output and resets the engine.
+     *
+     * @param output the array where the 32 bytes of the hash are written
+     * @param offset the position in the output where the hash starts
+     */
+    public void digest(byte[] output, int offset) {
+        if (offset < 0 || output.length - offset < DIGEST_LENGTH) {
+            throw new IndexOutOfBoundsException("Output must have room for " + DIGEST_LENGTH + " bytes");
+        }
+        // original Keccak padding: 0x01, zeros and 0x80 in the last byte of the block
+        buffer[bufferLength] = 0x01;
+        for (int i = bufferLength + 1; i < RATE; i++) {
+            buffer[i] = 0;
+        }
+        buffer[RATE - 1] |= (byte) 0x80;
+        absorb(buffer, 0);
+        for (int i = 0; i < DIGEST_LENGTH / 8; i++) {
+            encodeLELong(state[i], output, offset + i * 8);
+        }
+        reset();
+    }
+
+    private void absorb(byte[] block, int offset) {
+        for (int i = 0; i < RATE_LANES; i++) {
+            state[i] ^= decodeLELong(block, offset + i * 8);
+        }
+        permute();
+    }
+
+    private void permute() {
+        long a00 = state[0], a01 = state[1], a02 = state[2], a03 = state[3], a04 = state[4];
+        long a05 = state[5], a06 = state[6], a07 = state[7], a08 = state[8], a09 = state[9];
+        long a10 = state[10], a11 = state[11], a12 = state[12], a13 = state[13], a14 = state[14];
+        long a15 = state[15], a16 = state[16], a17 = state[17], a18 = state[18], a19 = state[19];
+        long a20 = state[20], a21 = state[21], a22 = state[22], a23 = state[23], a24 = state[24];
+
+        for (int round = 0; round < 24; round++) {
+            // theta
+            long c0 = a00 ^ a05 ^ a10 ^ a15 ^ a20;
+            long c1 = a01 ^ a06 ^ a11 ^ a16 ^ a21;
+            long c2 = a02 ^ a07 ^ a12 ^ a17 ^ a22;
+            long c3 = a03 ^ a08 ^ a13 ^ a18 ^ a23;
+            long c4 = a04 ^ a09 ^ a14 ^ a19 ^ a24;
+
+            long d1 = (c1 << 1 | c1 >>> 63) ^ c4;
+            long d2 = (c2 << 1 | c2 >>> 63) ^ c0;
+            long d3 = (c3 << 1 | c3 >>> 63) ^ c1;
+            long d4 = (c4 << 1 | c4 >>> 63) ^ c2;
+            long d0 = (c0 << 1 | c0 >>> 63) ^ c3;
+
+            a00 ^= d1; a05 ^= d1; a10 ^= d1; a15 ^= d1; a20 ^= d1;
+            a01 ^= d2; a06 ^= d2; a11 ^= d2; a16 ^= d2; a21 ^= d2;
+            a02 ^= d3; a07 ^= d3; a12 ^= d3; a17 ^= d3; a22 ^= d3;
+            a03 ^= d4; a08 ^= d4; a13 ^= d4; a18 ^= d4; a23 ^= d4;
+            a04 ^= d0; a09 ^= d0; a14 ^= d0; a19 ^= d0; a24 ^= d0;
+
+            // rho and pi
+            c1  = a01 <<  1 | a01 >>> 63;
+            a01 = a06 << 44 | a06 >>> 20;
+            a06 = a09 << 20 | a09 >>> 44;
+            a09 = a22 << 61 | a22 >>>  3;
+            a22 = a14 << 39 | a14 >>> 25;
+            a14 = a20 << 18 | a20 >>> 46;
+            a20 = a02 << 62 | a02 >>>  2;
+            a02 = a12 << 43 | a12 >>> 21;
+            a12 = a13 << 25 | a13 >>> 39;
+            a13 = a19 <<  8 | a19 >>> 56;
+            a19 = a23 << 56 | a23 >>>  8;
+            a23 = a15 << 41 | a15 >>> 23;
+            a15 = a04 << 27 | a04 >>> 37;
+            a04 = a24 << 14 | a24 >>> 50;
+            a24 = a21 <<  2 | a21 >>> 62;
+            a21 = a08 << 55 | a08 >>>  9;
+            a08 = a16 << 45 | a16 >>> 19;
+            a16 = a05 << 36 | a05 >>> 28;
+            a05 = a03 << 28 | a03 >>> 36;
+            a03 = a18 << 21 | a18 >>> 43;
+            a18 = a17 << 15 | a17 >>> 49;
+            a17 = a11 << 10 | a11 >>> 54;
+            a11 = a07 <<  6 | a07 >>> 58;
+            a07 = a10 <<  3 | a10 >>> 61;
+            a10 = c1;
+
+            // chi
+            c0 = a00 ^ (~a01 & a02);
+            c1 = a01 ^ (~a02 & a03);
+            a02 ^= ~a03 & a04;
+            a03 ^= ~a04 & a00;
+            a04 ^= ~a00 & a01;
+            a00 = c0;
+            a01 = c1;
+
+            c0 = a05 ^ (~a06 & a07);
+            c1 = a06 ^ (~a07 & a08);
+            a07 ^= ~a08 & a09;
+            a08 ^= ~a09 & a05;
+            a09 ^= ~a05 & a06;
+            a05 = c0;
+            a06 = c1;
+
+            c0 = a10 ^ (~a11 & a12);
+            c1 = a11 ^ (~a12 & a13);
+            a12 ^= ~a13 & a14;
+            a13 ^= ~a14 & a10;
+            a14 ^= ~a10 & a11;
+            a10 = c0;
+            a11 = c1;
+
+            c0 = a15 ^ (~a16 & a17);
+            c1 = a16 ^ (~a17 & a18);
+            a17 ^= ~a18 & a19;
+            a18 ^= ~a19 & a15;
+            a19 ^= ~a15 & a16;
+            a15 = c0;
+            a16 = c1;
+
+            c0 = a20 ^ (~a21 & a22);
+            c1 = a21 ^ (~a22 & a23);
+            a22 ^= ~a23 & a24;
+            a23 ^= ~a24 & a20;
+            a24 ^= ~a20 & a21;
+            a20 = c0;
+            a21 = c1;
+
+            // iota
+            a00 ^= ROUND_CONSTANTS[round];
+        }
+
+        state[0] = a00; state[1] = a01; state[2] = a02; state[3] = a03; state[4] = a04;
+        state[5] = a05; state[6] = a06; state[7] = a07; state[8] = a08; state[9] = a09;
+        state[10] = a10; state[11] = a11; state[12] = a12; state[13] = a13; state[14] = a14;
+        state[15] = a15; state[16] = a16; state[17] = a17; state[18] = a18; state[19] = a19;
+        state[20] = a20; state[21] = a21; state[22] = a22; state[23] = a23; state[24] = a24;
+    }
+
+    private static long decodeLELong(byte[] buf, int off) {
+        return (buf[off] & 0xFFL)
+                | ((buf[off + 1] & 0xFFL) << 8)
+                | ((buf[off + 2] & 0xFFL) << 16)
+                | ((buf[off + 3] & 0xFFL) << 24)
+                | ((buf[off + 4] & 0xFFL) << 32)
+                | ((buf[off + 5] & 0xFFL) << 40)
+                | ((buf[off + 6] & 0xFFL) << 48)
+                | ((buf[off + 7] & 0xFFL) << 56);
+    }
+
+    private static void encodeLELong(long val, byte[] buf, int off) {
+        buf[off] = (byte) val;
+        buf[off + 1] = (byte) (val >>> 8);
+        buf[off + 2] = (byte) (val >>> 16);
+        buf[off + 3] = (byte) (val >>> 24);
+        buf[off + 4] = (byte) (val >>> 32);
+        buf[off + 5] = (byte) (val >>> 40);
+        buf[off + 6] = (byte) (val >>> 48);
+        buf[off + 7] = (byte) (val >>> 56);
+    }
+}
@@ -0,0 +1,154 @@
+package io.slingr.endpoints.ethereum;
+
+import io.slingr.endpoints.services.AppLogs;
+import io.slingr.endpoints.services.datastores.DataStore;
+import io.slingr.endpoints.services.datastores.DataStoreResponse;
+import io.slingr.endpoints.utils.Json;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class BlocksManagerTest {
+
+    private static final int STORED_BLOCKS = 12;
+
+    @Test
+    public void testBlocksAreDispatchedInOrder() throws Exception {
+
+        AtomicReference<Json> head = new AtomicReference<>(nodeBlock(13));
+        DataStore blocksDs = storedBlocks();
+        List<Long> dispatched = new CopyOnWriteArrayList<>();
+        BlocksManager blocksManager = new BlocksManager(node(head), mock(AppLogs.class), blocksDs, listener(dispatched),
+                Json.map().set("pollingInterval", 50), null, new Metrics());
+        blocksManager.start();
+
+        waitUntilDispatched(dispatched, 13);
+        head.set(nodeBlock(14));
+        waitUntilDispatched(dispatched, 14);
+        blocksManager.shutdown();
+
+        Assert.assertEquals(Arrays.asList(13L, 14L), dispatched);
+        verify(blocksDs, times(2)).save(any(Json.class));
+
+    }
+
+    @Test
+    public void testBlocksAreFetchedAgainWhenTheyCannotBePersisted() throws Exception {
+
+        AtomicReference<Json> head = new AtomicReference<>(nodeBlock(13));
+        DataStore blocksDs = storedBlocks();
+        AtomicBoolean failed = new AtomicBoolean();
+        when(blocksDs.save(any(Json.class))).thenAnswer(invocation -> {
+            if (failed.compareAndSet(false, true)) {
+                throw new RuntimeException("Data store is not available");
+            }
+            return invocation.getArguments()[0];
+        });
+        List<Long> dispatched = new CopyOnWriteArrayList<>();
+        BlocksManager blocksManager = new BlocksManager(node(head), mock(AppLogs.class), blocksDs, listener(dispatched),
+                Json.map().set("pollingInterval", 50), null, new Metrics());
+        blocksManager.start();
+
+        // the block is not lost and the pipeline keeps working after the failure
+        waitUntilDispatched(dispatched, 13);
+        head.set(nodeBlock(14));
+        waitUntilDispatched(dispatched, 14);
+        blocksManager.shutdown();
+
+        Assert.assertEquals(Arrays.asList(13L, 14L), dispatched);
+        verify(blocksDs, times(3)).save(any(Json.class));
+        Assert.assertEquals(0, blocksManager.getPipelineQueueSizes().integer("persist").intValue());
+
+    }
+
+    @Test
+    public void testMissingBlocksAreFetchedByNumber() throws Exception {
+
+        AtomicReference<Json> head = new AtomicReference<>(nodeBlock(40));
+        DataStore blocksDs = storedBlocks();
+        List<Long> dispatched = new CopyOnWriteArrayList<>();
+        EthereumApiHelper ethereumApiHelper = node(head);
+        BlocksManager blocksManager = new BlocksManager(ethereumApiHelper, mock(AppLogs.class), blocksDs, listener(dispatched),
+                Json.map().set("pollingInterval", 50), null, new Metrics());
+        blocksManager.start();
+
+        waitUntilDispatched(dispatched, 40);
+        blocksManager.shutdown();
+
+        List<Long> expected = new ArrayList<>();
+        for (long number = STORED_BLOCKS + 1; number <= 40; number++) {
+            expected.add(number);
+        }
+        Assert.assertEquals(expected, dispatched);
+        // blocks are not fetched one by one walking the chain
+        verify(ethereumApiHelper, never()).getBlockByHash(any(String.class), anyBoolean());
+
+    }
+
+    @SuppressWarnings("unchecked")
+    private EthereumApiHelper node(AtomicReference<Json> head) {
+        EthereumApiHelper ethereumApiHelper = mock(EthereumApiHelper.class);
+        when(ethereumApiHelper.getBlockByNumber(eq("latest"), anyBoolean())).thenAnswer(invocation -> head.get());
+        when(ethereumApiHelper.getBlocksByNumber(any(List.class), anyBoolean())).thenAnswer(invocation -> {
+            List<Json> blocks = new ArrayList<>();
+            for (Long number : (List<Long>) invocation.getArguments()[0]) {
+                blocks.add(nodeBlock(number));
+            }
+            return blocks;
+        });
+        return ethereumApiHelper;
+    }
+
+    private DataStore storedBlocks() {
+        DataStore blocksDs = mock(DataStore.class);
+        when(blocksDs.find(any(Json.class))).thenAnswer(invocation -> {
+            List<Json> blocks = new ArrayList<>();
+            for (long number = 1; number <= STORED_BLOCKS; number++) {
+                blocks.add(new Block(hash(number - 1), hash(number), number, false, number).toJson());
+            }
+            DataStoreResponse res = mock(DataStoreResponse.class);
+            when(res.getItems()).thenReturn(blocks);
+            return res;
+        });
+        return blocksDs;
+    }
+
+    private EthereumEvent listener(List<Long> dispatched) {
+        EthereumEvent callbacks = mock(EthereumEvent.class);
+        doAnswer(invocation -> {
+            dispatched.add(((BlockContext) invocation.getArguments()[0]).getNumber());
+            return null;
+        }).when(callbacks).onNewBlock(any(BlockContext.class));
+        return callbacks;
+    }
+
+    private void waitUntilDispatched(List<Long> dispatched, long number) throws InterruptedException {
+        for (int i = 0; i < 100 && !dispatched.contains(number); i++) {
+            Thread.sleep(50);
+        }
+        Assert.assertTrue(dispatched.contains(number));
+    }
+
+    private Json nodeBlock(long number) {
+        return Json.map()
+                .set("hash", hash(number))
+                .set("parentHash", hash(number - 1))
+                .set("number", "0x" + Long.toHexString(number))
+                .set("timestamp", "0x" + Long.toHexString(number));
+    }
+
+    private String hash(long number) {
+        return String.format("0x%064x", number);
+    }
+}
@@ -0,0 +1,64 @@
+package io.slingr.endpoints.ethereum;
+
+import io.slingr.endpoints.utils.Json;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class ContractRegistryTest {
+
+    private static final String ABI = "[{\"constant\":true,\"inputs\":[{\"name\":\"owner\",\"type\":\"address\"}],\"name\":\"balanceOf\",\"outputs\":[{\"name\":\"\",\"type\":\"uint256\"}],\"type\":\"function\"}," +
+            "{\"anonymous\":false,\"inputs\":[{\"indexed\":true,\"name\":\"from\",\"type\":\"address\"}],\"name\":\"Transfer\",\"type\":\"event\"}]";
+
+    private ContractRegistry registry;
+
+    @Before
+    public void init() {
+        registry = new ContractRegistry();
+        registry.addConfiguredContracts(Collections.singletonList(Json.map()
+                .set("alias", "token")
+                .set("address", "0x0051bbFbaE99d2E8a90501eBFaD812FE39711283")
+                .set("abi", ABI)));
+        registry.add(Json.map()
+                .set("alias", "dynamic")
+                .set("address", "0x00000000000000000000000000000000000000aa")
+                .set("abi", Json.parse(ABI)), false);
+    }
+
+    @Test
+    public void testFind() {
+
+        ContractRegistry.Contract contract = registry.find("0x0051BBFBAE99D2E8A90501EBFAD812FE39711283", true);
+        Assert.assertNotNull(contract);
+        Assert.assertEquals("token", contract.getAlias());
+        Assert.assertTrue(contract.isConfigured());
+        Assert.assertEquals(contract, registry.find("token", false));
+
+        Assert.assertNotNull(registry.find("dynamic", false));
+        Assert.assertNull(registry.find("unknown", false));
+
+    }
+
+    @Test
+    public void testAbiIsParsed() {
+
+        ContractRegistry.Contract contract = registry.find("token", false);
+        Assert.assertNotNull(contract.getAbi());
+        Assert.assertNotNull(contract.getFunction("balanceOf"));
+        Assert.assertNull(contract.getFunction("Transfer"));
+
+    }
+
+    @Test
+    public void testRemove() {
+
+        ContractRegistry.Contract contract = registry.find("dynamic", false);
+        registry.remove(contract);
+        Assert.assertNull(registry.find("dynamic", false));
+        Assert.assertNull(registry.find("0x00000000000000000000000000000000000000aa", true));
+        Assert.assertEquals(1, registry.size());
+
+    }
+}
@@ -3,6 +3,13 @@ package io.slingr.endpoints.ethereum;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static org.junit.Assert.*;
 
 /**
@@ -27,4 +34,40 @@ public class CryptoUtilsTest {
         assertNotNull(decryptedPrivateKey);
         assertEquals(privateKey, decryptedPrivateKey);
     }
+
+    @Test
+    public void testDecryptionOfPreviousFormat() {
+        // values encrypted before were split in lines of 76 characters
+        String encryptedPrivateKey = "zakixF4XMpj141/pTAzhR5bRkSWINdY5K+HHUVtNa7FJeT5hxuKBvArYDSSxBveTNOfUe+K1gAs/\nrjxNWm8WTtfS81qL+iqx5Xky4dxl/dc=";
+        assertEquals("49abb5988f0a6f06079c873a7bd1a962bc6d9ea84466a8a1b1b0382c172c131c", cryptoUtils.decrypt(encryptedPrivateKey));
+        assertEquals(encryptedPrivateKey.replace("\n", ""), cryptoUtils.encrypt("49abb5988f0a6f06079c873a7bd1a962bc6d9ea84466a8a1b1b0382c172c131c"));
+    }
+
+    @Test
+    public void testConcurrentEncryptionAndDecryption() throws Exception {
+        int threads = 8;
+        int operationsPerThread = 2000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            tasks.add(() -> {
+                int errors = 0;
+                for (int i = 0; i < operationsPerThread; i++) {
+                    String value = String.format("%064x", thread * operationsPerThread + i);
+                    String encrypted = cryptoUtils.encrypt(value);
+                    if (encrypted.equals(value) || !value.equals(cryptoUtils.decrypt(encrypted))) {
+                        errors++;
+                    }
+                }
+                return errors;
+            });
+        }
+        int errors = 0;
+        for (Future<Integer> future : executor.invokeAll(tasks)) {
+            errors += future.get();
+        }
+        executor.shutdown();
+        assertEquals(0, errors);
+    }
 }
@@ -0,0 +1,147 @@
+package io.slingr.endpoints.ethereum;
+
+import io.slingr.endpoints.services.datastores.DataStore;
+import io.slingr.endpoints.services.datastores.DataStoreResponse;
+import io.slingr.endpoints.utils.Json;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.*;
+
+public class DataStoreRetentionTest {
+
+    private Map<String, Json> documents;
+    private DataStore dataStore;
+
+    @Before
+    public void init() {
+        documents = new TreeMap<>();
+        dataStore = mock(DataStore.class);
+        // the store keeps documents sorted by id and offsets are the last id of the previous page
+        when(dataStore.find(any(Json.class), any(), anyInt())).thenAnswer(invocation -> {
+            Json filter = (Json) invocation.getArguments()[0];
+            Object offset = invocation.getArguments()[1];
+            int size = (Integer) invocation.getArguments()[2];
+            List<Json> page = new ArrayList<>();
+            for (Json document : documents.values()) {
+                if (page.size() < size && (offset == null || document.string("_id").compareTo(offset.toString()) > 0) && matches(document, filter)) {
+                    page.add(document);
+                }
+            }
+            DataStoreResponse res = mock(DataStoreResponse.class);
+            when(res.getItems()).thenReturn(page);
+            doReturn(page.isEmpty() ? null : page.get(page.size() - 1).string("_id")).when(res).getOffset();
+            return res;
+        });
+        doAnswer(invocation -> {
+            Json filter = (Json) invocation.getArguments()[0];
+            documents.values().removeIf(document -> matches(document, filter));
+            return null;
+        }).when(dataStore).remove(any(Json.class));
+    }
+
+    @Test
+    public void testPurgeWithRangeFilters() {
+
+        for (int i = 0; i < 1200; i++) {
+            save(i, i % 3 == 0 ? "false" : "true", (long) i);
+        }
+        DataStoreRetention retention = new DataStoreRetention("events", dataStore);
+
+        retention.startRun();
+        long purged = retention.purge(Collections.singletonList(
+                Json.map().set("sent", "true").set("blockNumber", Json.map().set("$lt", 1100L))));
+
+        // sent events below 1100, two of each three
+        Assert.assertEquals(733, purged);
+        Assert.assertEquals(1200 - 733, documents.size());
+        for (Json document : documents.values()) {
+            Assert.assertTrue("false".equals(document.string("sent")) || document.longInteger("blockNumber") >= 1100);
+        }
+        // documents are removed by pages of ids
+        verify(dataStore, times(2)).remove(any(Json.class));
+        Assert.assertEquals(733, retention.getLastPurgedCount());
+
+    }
+
+    @Test
+    public void testPurgeStopsWhenDocumentsAreNotRemoved() {
+
+        for (int i = 0; i < 10; i++) {
+            save(i, "true", (long) i);
+        }
+        // the store ignores removals
+        doAnswer(invocation -> null).when(dataStore).remove(any(Json.class));
+        DataStoreRetention retention = new DataStoreRetention("events", dataStore);
+
+        retention.purge(Collections.singletonList(Json.map().set("sent", "true")));
+
+        verify(dataStore, times(1)).remove(any(Json.class));
+        Assert.assertEquals(10, documents.size());
+
+    }
+
+    @Test
+    public void testPurgeByScanIsBoundedByPages() {
+
+        for (int i = 0; i < 1200; i++) {
+            // documents saved without the number can only be removed by scanning
+            save(i, "true", i % 2 == 0 ? null : (long) i);
+        }
+        DataStoreRetention retention = new DataStoreRetention("events", dataStore);
+
+        retention.startRun();
+        Assert.assertFalse(retention.purgeByScan(null, document -> document.isEmpty("blockNumber"), 2));
+        Assert.assertEquals(500, retention.getLastPurgedCount());
+        Assert.assertTrue(retention.purgeByScan(null, document -> document.isEmpty("blockNumber"), 2));
+        Assert.assertEquals(600, retention.getLastPurgedCount());
+        Assert.assertEquals(600, retention.getPurgedCount());
+        for (Json document : documents.values()) {
+            Assert.assertFalse(document.isEmpty("blockNumber"));
+        }
+
+    }
+
+    private void save(int index, String sent, Long blockNumber) {
+        Json document = Json.map().set("_id", String.format("%06d", index)).set("sent", sent);
+        if (blockNumber != null) {
+            document.set("blockNumber", blockNumber);
+        }
+        documents.put(document.string("_id"), document);
+    }
+
+    // supports the operators used by the retention: equals, $lt and $in
+    private boolean matches(Json document, Json filter) {
+        if (filter == null) {
+            return true;
+        }
+        for (String key : filter.keys()) {
+            if (filter.object(key) instanceof String) {
+                if (!filter.string(key).equals(document.string(key))) {
+                    return false;
+                }
+                continue;
+            }
+            Json condition = filter.json(key);
+            if (condition.contains("$lt")) {
+                Long value = document.longInteger(key);
+                if (value == null || value >= condition.longInteger("$lt")) {
+                    return false;
+                }
+            }
+            if (condition.contains("$in") && !condition.json("$in").toList().contains(document.string(key))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
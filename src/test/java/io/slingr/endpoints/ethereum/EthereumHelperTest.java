@@ -176,6 +176,48 @@ public class EthereumHelperTest {
 
     }
 
+    @Test
+    public void testFunctionsAreCached() {
+
+        Json fnDef = ethereumHelper.getFunctionDefinition(abiDef, "setInt");
+        Json params = Json.list().push(345);
+        String expectFunction = "747586b80000000000000000000000000000000000000000000000000000000000000159";
+
+        Assert.assertEquals(expectFunction, ethereumHelper.encodeFunction(fnDef, params));
+        long hits = EthereumHelper.getFunctionsCacheStats().hitCount();
+        Assert.assertEquals(expectFunction, new EthereumHelper().encodeFunction(fnDef, params));
+        Assert.assertEquals(hits + 1, EthereumHelper.getFunctionsCacheStats().hitCount());
+
+    }
+
+    @Test
+    public void testBulkEncodeAndDecode() {
+
+        Json fnDef = ethereumHelper.getFunctionDefinition(abiDef, "setInt");
+        List<Json> items = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            items.add(Json.map().set("params", Json.list().push(i)));
+        }
+        items.add(Json.map().set("params", Json.list().push("not a number")));
+
+        for (boolean parallel : new boolean[]{false, true}) {
+            List<Json> results = ethereumHelper.encodeFunctions(fnDef, items, parallel);
+            Assert.assertEquals(101, results.size());
+            for (int i = 0; i < 100; i++) {
+                Assert.assertEquals("0x" + ethereumHelper.encodeFunction(fnDef, Json.list().push(i)), results.get(i).string("body"));
+            }
+            Assert.assertNotNull(results.get(100).string("error"));
+        }
+
+        Json outputDef = ethereumHelper.getFunctionDefinition(abiDef, "getUint8");
+        items = new ArrayList<>();
+        items.add(Json.map().set("data", "0x0000000000000000000000000000000000000000000000000000000000000034"));
+        List<Json> results = ethereumHelper.decodeResults(outputDef, items, false);
+        Assert.assertEquals(ethereumHelper.decodeResult(outputDef, "0x0000000000000000000000000000000000000000000000000000000000000034").toList(),
+                results.get(0).json("result").toList());
+
+    }
+
     @Test
     public void testUintArrayParams() {
 
@@ -0,0 +1,92 @@
+package io.slingr.endpoints.ethereum;
+
+import io.slingr.endpoints.services.AppLogs;
+import io.slingr.endpoints.services.Events;
+import io.slingr.endpoints.utils.Json;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class EventDispatcherTest {
+
+    @Test
+    public void testEventsAreSentInOrder() throws Exception {
+        Events events = mock(Events.class);
+        EventDispatcher dispatcher = new EventDispatcher(events, mock(AppLogs.class));
+        dispatcher.start();
+
+        CountDownLatch latch = new CountDownLatch(2);
+        List<EventDispatcher.Event> firstBlock = new ArrayList<>();
+        firstBlock.add(new EventDispatcher.Event("contractEvent", Json.map().set("index", 1), null));
+        firstBlock.add(new EventDispatcher.Event("contractEvent", Json.map().set("index", 2), null));
+        dispatcher.dispatch(firstBlock, latch::countDown);
+        List<EventDispatcher.Event> secondBlock = new ArrayList<>();
+        secondBlock.add(new EventDispatcher.Event("contractEvent", Json.map().set("index", 3), null));
+        dispatcher.dispatch(secondBlock, latch::countDown);
+
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        InOrder inOrder = inOrder(events);
+        inOrder.verify(events).send("contractEvent", Json.map().set("index", 1), null);
+        inOrder.verify(events).send("contractEvent", Json.map().set("index", 2), null);
+        inOrder.verify(events).send("contractEvent", Json.map().set("index", 3), null);
+        Assert.assertEquals(3, dispatcher.getSentCount());
+
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void testFailedEventsAreRetried() throws Exception {
+        Events events = mock(Events.class);
+        AtomicInteger attempts = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new RuntimeException("unavailable");
+            }
+            return null;
+        }).when(events).send(eq("transactionConfirmed"), any(Json.class), eq("function1"));
+        EventDispatcher dispatcher = new EventDispatcher(events, mock(AppLogs.class));
+        dispatcher.start();
+
+        CountDownLatch latch = new CountDownLatch(1);
+        List<EventDispatcher.Event> batch = new ArrayList<>();
+        batch.add(new EventDispatcher.Event("transactionConfirmed", Json.map().set("status", "0x1"), "function1"));
+        dispatcher.dispatch(batch, latch::countDown);
+
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        verify(events, times(2)).send(eq("transactionConfirmed"), any(Json.class), eq("function1"));
+        Assert.assertEquals(0, dispatcher.getFailedCount());
+
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void testFailureCallbackIsCalledWhenEventsCannotBeSent() throws Exception {
+        Events events = mock(Events.class);
+        doThrow(new RuntimeException("unavailable")).when(events).send(eq("contractEvent"), any(Json.class), any());
+        EventDispatcher dispatcher = new EventDispatcher(events, mock(AppLogs.class));
+        dispatcher.start();
+
+        CountDownLatch sent = new CountDownLatch(1);
+        CountDownLatch failed = new CountDownLatch(1);
+        List<EventDispatcher.Event> batch = new ArrayList<>();
+        batch.add(new EventDispatcher.Event("contractEvent", Json.map().set("index", 1), null));
+        dispatcher.dispatch(batch, sent::countDown, failed::countDown);
+
+        // all the attempts take several seconds because of the backoff
+        Assert.assertTrue(failed.await(30, TimeUnit.SECONDS));
+        Assert.assertEquals(1, sent.getCount());
+        Assert.assertEquals(1, dispatcher.getFailedCount());
+
+        dispatcher.shutdown();
+    }
+}
@@ -0,0 +1,81 @@
+package io.slingr.endpoints.ethereum;
+
+import io.slingr.endpoints.utils.Json;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+public class MetricsTest {
+
+    @Test
+    public void testLatencyPercentiles() {
+
+        Metrics metrics = new Metrics();
+        for (int i = 1; i <= 100; i++) {
+            metrics.recordLatency("rpc.eth_getLogs", TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        Json latency = metrics.snapshot().json("latencies").json("rpc.eth_getLogs");
+        Assert.assertEquals(100L, (long) latency.longInteger("count"));
+        Assert.assertEquals(100.0, millis(latency, "maxMillis"), 0.001);
+        Assert.assertEquals(50.5, millis(latency, "meanMillis"), 0.001);
+        Assert.assertEquals(50.0, millis(latency, "p50Millis"), 0.001);
+        Assert.assertEquals(100.0, millis(latency, "p99Millis"), 0.001);
+
+    }
+
+    @Test
+    public void testTimedLock() throws Exception {
+
+        Metrics metrics = new Metrics();
+        Lock lock = metrics.timedLock("transactions");
+        CountDownLatch locked = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            lock.lock();
+            try {
+                locked.countDown();
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.unlock();
+            }
+        });
+        holder.start();
+        locked.await();
+        lock.lock();
+        // reentrant acquisitions are not recorded again
+        lock.lock();
+        lock.unlock();
+        lock.unlock();
+        holder.join();
+
+        Assert.assertEquals(2, metrics.latency("locks.transactions.wait").getCount());
+        Assert.assertEquals(2, metrics.latency("locks.transactions.hold").getCount());
+        Json wait = metrics.snapshot().json("latencies").json("locks.transactions.wait");
+        Assert.assertTrue(millis(wait, "maxMillis") >= 20);
+
+    }
+
+    @Test
+    public void testGauges() {
+
+        Metrics metrics = new Metrics();
+        metrics.gauge("transactions.pending", () -> 3);
+        metrics.gauge("blocks.pipelineQueues", () -> {
+            throw new IllegalStateException("Not started");
+        });
+        metrics.increment("rpc.eth_call.errors");
+        Json snapshot = metrics.snapshot();
+        Assert.assertEquals(3L, (long) snapshot.json("gauges").longInteger("transactions.pending"));
+        Assert.assertNull(snapshot.json("gauges").object("blocks.pipelineQueues"));
+        Assert.assertEquals(1L, (long) snapshot.json("counters").longInteger("rpc.eth_call.errors"));
+
+    }
+
+    private double millis(Json latency, String key) {
+        return ((Number) latency.object(key)).doubleValue();
+    }
+}
@@ -0,0 +1,58 @@
+package io.slingr.endpoints.ethereum;
+
+import io.slingr.endpoints.utils.Json;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.util.Collections;
+import java.util.List;
+
+public class MultiCallerTest {
+
+    @Test
+    public void testEncodeTryAggregate() {
+
+        MultiCaller.Call call = new MultiCaller.Call("0x00000000000000000000000000000000000000aa", Json.map(), "0x12345678");
+        String encoded = Hex.toHexString(MultiCaller.encodeTryAggregate(Collections.singletonList(call)));
+        String expected = "bce38bd7" +
+                word("0") +
+                word("40") +
+                word("1") +
+                word("20") +
+                word("aa") +
+                word("40") +
+                word("4") +
+                "12345678" + repeat("0", 56);
+        Assert.assertEquals(expected, encoded);
+
+    }
+
+    @Test
+    public void testDecodeTryAggregate() {
+
+        String data = word("20") +
+                word("2") +
+                word("40") +
+                word("c0") +
+                word("1") + word("40") + word("20") + word("2a") +
+                word("0") + word("40") + word("0");
+        List<String> results = MultiCaller.decodeTryAggregate(Hex.decode(data));
+        Assert.assertEquals(2, results.size());
+        Assert.assertEquals("0x" + word("2a"), results.get(0));
+        Assert.assertNull(results.get(1));
+
+    }
+
+    private String word(String hex) {
+        return repeat("0", 64 - hex.length()) + hex;
+    }
+
+    private String repeat(String value, int times) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            sb.append(value);
+        }
+        return sb.toString();
+    }
+}
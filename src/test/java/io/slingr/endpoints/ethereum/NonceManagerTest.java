@@ -0,0 +1,121 @@
+package io.slingr.endpoints.ethereum;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.*;
+
+public class NonceManagerTest {
+
+    private static final String ADDRESS = "0x8bbf499511a6866d7e942afb1c2a12f9c065310b";
+
+    @Test
+    public void testReserveAndRelease() {
+
+        EthereumApiHelper ethereumApiHelper = mock(EthereumApiHelper.class);
+        when(ethereumApiHelper.getTransactionCount(ADDRESS, "pending")).thenReturn(5L);
+        NonceManager nonceManager = new NonceManager(ethereumApiHelper, new Metrics());
+
+        Assert.assertEquals(5, nonceManager.reserve(ADDRESS));
+        Assert.assertEquals(6, nonceManager.reserve(ADDRESS.toUpperCase().replace("0X", "0x")));
+        Assert.assertEquals(7, nonceManager.reserve(ADDRESS.substring(2)));
+        Assert.assertEquals(8, nonceManager.reserve(ADDRESS));
+        verify(ethereumApiHelper, times(1)).getTransactionCount(ADDRESS, "pending");
+
+        // released nonces are given again before new ones
+        nonceManager.release(ADDRESS, 6);
+        Assert.assertEquals(6, nonceManager.reserve(ADDRESS));
+        Assert.assertEquals(9, nonceManager.reserve(ADDRESS));
+
+        // releasing the last ones moves the counter back
+        nonceManager.release(ADDRESS, 8);
+        nonceManager.release(ADDRESS, 9);
+        Assert.assertEquals(8, nonceManager.reserve(ADDRESS));
+
+        when(ethereumApiHelper.getTransactionCount(ADDRESS, "pending")).thenReturn(12L);
+        nonceManager.resync(ADDRESS);
+        Assert.assertEquals(12, nonceManager.reserve(ADDRESS));
+        verify(ethereumApiHelper, times(2)).getTransactionCount(ADDRESS, "pending");
+
+    }
+
+    @Test
+    public void testResyncKeepsReservedNonces() {
+
+        EthereumApiHelper ethereumApiHelper = mock(EthereumApiHelper.class);
+        when(ethereumApiHelper.getTransactionCount(ADDRESS, "pending")).thenReturn(5L);
+        NonceManager nonceManager = new NonceManager(ethereumApiHelper, new Metrics());
+
+        Assert.assertEquals(5, nonceManager.reserve(ADDRESS));
+        Assert.assertEquals(6, nonceManager.reserve(ADDRESS));
+        Assert.assertEquals(7, nonceManager.reserve(ADDRESS));
+
+        // the node rejected the first one while the others are still being sent, so the node still says 5
+        nonceManager.release(ADDRESS, 5);
+        nonceManager.resync(ADDRESS);
+        Assert.assertEquals(5, nonceManager.reserve(ADDRESS));
+        Assert.assertEquals(8, nonceManager.reserve(ADDRESS));
+        verify(ethereumApiHelper, times(2)).getTransactionCount(ADDRESS, "pending");
+
+    }
+
+    @Test
+    public void testAbandonedReservationsExpire() throws Exception {
+
+        EthereumApiHelper ethereumApiHelper = mock(EthereumApiHelper.class);
+        when(ethereumApiHelper.getTransactionCount(ADDRESS, "pending")).thenReturn(5L);
+        NonceManager nonceManager = new NonceManager(ethereumApiHelper, new Metrics(), 200);
+
+        // the first one is never sent nor released
+        Assert.assertEquals(5, nonceManager.reserve(ADDRESS));
+        Assert.assertEquals(6, nonceManager.reserve(ADDRESS));
+        Thread.sleep(300);
+
+        // the node is still waiting for 5, so it is given again
+        Assert.assertEquals(5, nonceManager.reserve(ADDRESS));
+        Assert.assertEquals(7, nonceManager.reserve(ADDRESS));
+        verify(ethereumApiHelper, times(2)).getTransactionCount(ADDRESS, "pending");
+
+        // once the node has them, nothing is given again
+        when(ethereumApiHelper.getTransactionCount(ADDRESS, "pending")).thenReturn(8L);
+        Thread.sleep(300);
+        Assert.assertEquals(8, nonceManager.reserve(ADDRESS));
+        Assert.assertEquals(9, nonceManager.reserve(ADDRESS));
+        verify(ethereumApiHelper, times(3)).getTransactionCount(ADDRESS, "pending");
+
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCountNotAvailable() {
+
+        EthereumApiHelper ethereumApiHelper = mock(EthereumApiHelper.class);
+        NonceManager nonceManager = new NonceManager(ethereumApiHelper, new Metrics());
+        nonceManager.reserve(ADDRESS);
+
+    }
+
+    @Test
+    public void testConcurrentReservations() throws Exception {
+
+        EthereumApiHelper ethereumApiHelper = mock(EthereumApiHelper.class);
+        when(ethereumApiHelper.getTransactionCount(ADDRESS, "pending")).thenReturn(0L);
+        NonceManager nonceManager = new NonceManager(ethereumApiHelper, new Metrics());
+
+        Set<Long> nonces = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 1000; i++) {
+            executor.submit(() -> nonces.add(nonceManager.reserve(ADDRESS)));
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        Assert.assertEquals(1000, nonces.size());
+        Assert.assertEquals(1000, nonceManager.reserve(ADDRESS));
+
+    }
+}
@@ -0,0 +1,91 @@
+package io.slingr.endpoints.ethereum;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+public class PendingTransactionsTest {
+
+    private PendingTransactions pendingTransactions;
+
+    @Before
+    public void init() {
+        pendingTransactions = new PendingTransactions();
+        pendingTransactions.put(createTransaction("0x01", "0x1", "0xaaa"));
+        pendingTransactions.put(createTransaction("0x02", "0x2", "0xaaa"));
+        pendingTransactions.put(createTransaction("0x03", "0x3", "0xaaa"));
+        pendingTransactions.put(createTransaction("0x04", "0x3", "0xaaa"));
+        pendingTransactions.put(createTransaction("0x05", "0x1", "0xbbb"));
+    }
+
+    @Test
+    public void testSameNonce() {
+
+        List<Transaction> txs = pendingTransactions.getWithSameNonce(pendingTransactions.get("0x03"));
+        Assert.assertEquals(1, txs.size());
+        Assert.assertEquals("0x04", txs.get(0).getTxHash());
+
+        txs = pendingTransactions.getWithSameNonce(pendingTransactions.get("0x01"));
+        Assert.assertTrue(txs.isEmpty());
+
+    }
+
+    @Test
+    public void testLowerNonce() {
+
+        List<Transaction> txs = pendingTransactions.getWithLowerNonce(pendingTransactions.get("0x03"));
+        Assert.assertEquals(2, txs.size());
+        Assert.assertEquals("0x01", txs.get(0).getTxHash());
+        Assert.assertEquals("0x02", txs.get(1).getTxHash());
+
+        txs = pendingTransactions.getWithLowerNonce(pendingTransactions.get("0x05"));
+        Assert.assertTrue(txs.isEmpty());
+
+    }
+
+    @Test
+    public void testRemove() {
+
+        pendingTransactions.remove("0x01");
+        pendingTransactions.remove("0x04");
+        Assert.assertEquals(3, pendingTransactions.size());
+        Assert.assertFalse(pendingTransactions.containsKey("0x01"));
+
+        List<Transaction> txs = pendingTransactions.getWithLowerNonce(pendingTransactions.get("0x03"));
+        Assert.assertEquals(1, txs.size());
+        Assert.assertEquals("0x02", txs.get(0).getTxHash());
+        Assert.assertTrue(pendingTransactions.getWithSameNonce(pendingTransactions.get("0x03")).isEmpty());
+
+    }
+
+    @Test
+    public void testOldestTimestamp() {
+
+        PendingTransactions txs = new PendingTransactions();
+        Assert.assertEquals(0, txs.getOldestTimestamp());
+        txs.put(createTransaction("0x01", "0x1", "0xaaa", 3000));
+        txs.put(createTransaction("0x02", "0x2", "0xaaa", 1000));
+        txs.put(createTransaction("0x03", "0x3", "0xaaa", 1000));
+        Assert.assertEquals(1000, txs.getOldestTimestamp());
+
+        txs.remove("0x02");
+        Assert.assertEquals(1000, txs.getOldestTimestamp());
+        txs.remove("0x03");
+        Assert.assertEquals(3000, txs.getOldestTimestamp());
+        // putting the same transaction again doesn't count it twice
+        txs.put(createTransaction("0x01", "0x1", "0xaaa", 3000));
+        txs.remove("0x01");
+        Assert.assertEquals(0, txs.getOldestTimestamp());
+
+    }
+
+    private Transaction createTransaction(String txHash, String nonce, String from) {
+        return createTransaction(txHash, nonce, from, 0);
+    }
+
+    private Transaction createTransaction(String txHash, String nonce, String from, long timestamp) {
+        return new Transaction(txHash, nonce, from, null, timestamp, 0, 0);
+    }
+}
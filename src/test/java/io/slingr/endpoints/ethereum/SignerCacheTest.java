@@ -0,0 +1,51 @@
+package io.slingr.endpoints.ethereum;
+
+import io.slingr.endpoints.services.datastores.DataStore;
+import io.slingr.endpoints.utils.Json;
+import org.ethereum.crypto.ECKey;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class SignerCacheTest {
+
+    private static final String PRIVATE_KEY = "49abb5988f0a6f06079c873a7bd1a962bc6d9ea84466a8a1b1b0382c172c131c";
+
+    @Test
+    public void testKeysAreCached() throws Exception {
+
+        CryptoUtils cryptoUtils = new CryptoUtils("jdU72Jus72bnfOnzA82su!8s_27hsN0jsy#");
+        String address = "0x" + Hex.toHexString(ECKey.fromPrivate(new BigInteger(PRIVATE_KEY, 16)).getAddress());
+        DataStore accountsDs = mock(DataStore.class);
+        when(accountsDs.findOne(any(Json.class))).thenAnswer(invocation -> {
+            Json filter = (Json) invocation.getArguments()[0];
+            if (address.equals(filter.string("address"))) {
+                return Json.map().set("address", address).set("privateKey", cryptoUtils.encrypt(PRIVATE_KEY));
+            }
+            return null;
+        });
+        SignerCache signerCache = new SignerCache(accountsDs, cryptoUtils, 10, 60);
+
+        ECKey key = signerCache.getKey(address.toUpperCase().replace("0X", "0x"));
+        Assert.assertNotNull(key);
+        Assert.assertEquals(address, "0x" + Hex.toHexString(key.getAddress()));
+        Assert.assertSame(key, signerCache.getKey(address));
+        verify(accountsDs, times(1)).findOne(any(Json.class));
+        Assert.assertEquals(1, signerCache.getStats().hitCount());
+
+        // accounts that are not managed are not cached
+        Assert.assertNull(signerCache.getKey("0x0000000000000000000000000000000000000001"));
+        Assert.assertNull(signerCache.getKey("0x0000000000000000000000000000000000000001"));
+        verify(accountsDs, times(3)).findOne(any(Json.class));
+
+        signerCache.invalidate(address);
+        Assert.assertNotNull(signerCache.getKey(address));
+        verify(accountsDs, times(4)).findOne(any(Json.class));
+
+    }
+}
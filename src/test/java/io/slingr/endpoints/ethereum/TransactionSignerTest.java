@@ -0,0 +1,142 @@
+package io.slingr.endpoints.ethereum;
+
+import io.slingr.endpoints.services.datastores.DataStore;
+import io.slingr.endpoints.utils.Json;
+import org.ethereum.core.Transaction;
+import org.ethereum.crypto.ECKey;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class TransactionSignerTest {
+
+    private static final String PRIVATE_KEY_1 = "49abb5988f0a6f06079c873a7bd1a962bc6d9ea84466a8a1b1b0382c172c131c";
+    private static final String PRIVATE_KEY_2 = "4646464646464646464646464646464646464646464646464646464646464646";
+    private static final String UNMANAGED_ADDRESS = "0x0000000000000000000000000000000000000001";
+    private static final String CORRUPTED_ADDRESS = "0x0000000000000000000000000000000000000002";
+
+    private ECKey key1 = ECKey.fromPrivate(new BigInteger(PRIVATE_KEY_1, 16));
+    private ECKey key2 = ECKey.fromPrivate(new BigInteger(PRIVATE_KEY_2, 16));
+    private DataStore accountsDs;
+    private TransactionSigner signer;
+
+    @Before
+    public void init() throws Exception {
+        CryptoUtils cryptoUtils = new CryptoUtils("jdU72Jus72bnfOnzA82su!8s_27hsN0jsy#");
+        String encryptedKey1 = cryptoUtils.encrypt(PRIVATE_KEY_1);
+        String encryptedKey2 = cryptoUtils.encrypt(PRIVATE_KEY_2);
+        accountsDs = mock(DataStore.class);
+        when(accountsDs.findOne(any(Json.class))).thenAnswer(invocation -> {
+            String address = ((Json) invocation.getArguments()[0]).string("address");
+            if (address(key1).equals(address)) {
+                return Json.map().set("address", address).set("privateKey", encryptedKey1);
+            }
+            if (address(key2).equals(address)) {
+                return Json.map().set("address", address).set("privateKey", encryptedKey2);
+            }
+            if (CORRUPTED_ADDRESS.equals(address)) {
+                return Json.map().set("address", address).set("privateKey", "corrupted");
+            }
+            return null;
+        });
+        signer = new TransactionSigner(new SignerCache(accountsDs, cryptoUtils, 10, 60), new EthereumHelper());
+    }
+
+    @Test
+    public void testSignTransaction() {
+
+        // the address can come without 0x and in upper case
+        String data = signer.sign(transaction(address(key1).substring(2).toUpperCase(), 5));
+        Transaction tx = new Transaction(Hex.decode(data.substring(2)));
+        Assert.assertEquals(5, new BigInteger(1, tx.getNonce()).intValue());
+        Assert.assertArrayEquals(key1.getAddress(), tx.getSender());
+
+        try {
+            signer.sign(transaction(UNMANAGED_ADDRESS, 1));
+            Assert.fail("Unmanaged addresses cannot sign");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains(UNMANAGED_ADDRESS));
+        }
+
+    }
+
+    @Test
+    public void testSignManyTransactionsInParallel() {
+
+        List<Json> transactions = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            if (i == 7) {
+                transactions.add(transaction(UNMANAGED_ADDRESS, i));
+            } else if (i == 13) {
+                transactions.add(Json.map().set("nonce", "0x" + Integer.toHexString(i)));
+            } else {
+                transactions.add(transaction(address(i % 2 == 0 ? key1 : key2), i));
+            }
+        }
+
+        List<Json> results = signer.signAll(transactions, true);
+
+        Assert.assertEquals(20, results.size());
+        for (int i = 0; i < 20; i++) {
+            Json result = results.get(i);
+            if (i == 7) {
+                Assert.assertTrue(result.string("error").contains(UNMANAGED_ADDRESS));
+            } else if (i == 13) {
+                Assert.assertEquals("From address must be provided", result.string("error"));
+            } else {
+                Transaction tx = new Transaction(Hex.decode(result.string("data").substring(2)));
+                Assert.assertEquals(i, new BigInteger(1, tx.getNonce()).intValue());
+                Assert.assertArrayEquals((i % 2 == 0 ? key1 : key2).getAddress(), tx.getSender());
+            }
+        }
+        // keys are resolved once per account
+        verify(accountsDs, times(3)).findOne(any(Json.class));
+
+    }
+
+    @Test
+    public void testKeyThatCannotBeLoadedOnlyFailsItsTransactions() {
+
+        List<Json> transactions = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            transactions.add(transaction(i % 2 == 0 ? address(key1) : CORRUPTED_ADDRESS, i));
+        }
+
+        List<Json> results = signer.signAll(transactions, true);
+
+        Assert.assertEquals(10, results.size());
+        for (int i = 0; i < 10; i++) {
+            Json result = results.get(i);
+            if (i % 2 == 0) {
+                Transaction tx = new Transaction(Hex.decode(result.string("data").substring(2)));
+                Assert.assertArrayEquals(key1.getAddress(), tx.getSender());
+            } else {
+                Assert.assertTrue(result.string("error").contains(CORRUPTED_ADDRESS));
+            }
+        }
+
+    }
+
+    private Json transaction(String from, int nonce) {
+        return Json.map()
+                .set("from", from)
+                .set("nonce", "0x" + Integer.toHexString(nonce))
+                .set("gasPrice", "0x4a817c800")
+                .set("gas", "0x5208")
+                .set("to", "0x3535353535353535353535353535353535353535")
+                .set("value", "0x1")
+                .set("netId", 1);
+    }
+
+    private String address(ECKey key) {
+        return "0x" + Hex.toHexString(key.getAddress());
+    }
+}
@@ -0,0 +1,179 @@
+package io.slingr.endpoints.ethereum;
+
+import io.slingr.endpoints.services.AppLogs;
+import io.slingr.endpoints.services.HttpService;
+import io.slingr.endpoints.utils.Json;
+import org.ethereum.crypto.ECKey;
+import org.ethereum.crypto.HashUtil;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.ethereum.util.ByteUtil.longToBytesNoLeadZeroes;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class TransactionSubmitterTest {
+
+    private static final ECKey KEY = ECKey.fromPrivate(new BigInteger("49abb5988f0a6f06079c873a7bd1a962bc6d9ea84466a8a1b1b0382c172c131c", 16));
+    private static final String FROM = "0x" + Hex.toHexString(KEY.getAddress());
+
+    @Test
+    public void testTransactionsAreRegisteredAndSentInBatches() throws Exception {
+
+        HttpService httpService = mock(HttpService.class);
+        List<Json> requests = new ArrayList<>();
+        when(httpService.post(any(Json.class))).thenAnswer(invocation -> {
+            Json body = (Json) invocation.getArguments()[0];
+            Json responses = Json.list();
+            for (Json request : body.jsons()) {
+                requests.add(request);
+                responses.push(Json.map().set("id", request.longInteger("id")).set("result", hash(request.strings("params").get(0))));
+            }
+            return responses;
+        });
+        TransactionManager transactionManager = mock(TransactionManager.class);
+        NonceManager nonceManager = mock(NonceManager.class);
+        // with one thread all the queued transactions are taken together
+        TransactionSubmitter submitter = new TransactionSubmitter(new EthereumApiHelper(httpService), transactionManager, nonceManager,
+                mock(AppLogs.class), Json.map().set("submitterConcurrency", 1), new Metrics());
+
+        List<Json> transactions = new ArrayList<>();
+        transactions.add(Json.map().set("data", sign(7)));
+        transactions.add(Json.map().set("data", sign(8)).set("from", FROM.toUpperCase().replace("0X", "0x")));
+        transactions.add(Json.map().set("data", "0x1234"));
+        List<Json> results = submitter.submit(transactions, "function1", 1000, 2);
+        submitter.start();
+        submitter.shutdown();
+
+        Assert.assertEquals(3, results.size());
+        Assert.assertEquals(hash(sign(7)), results.get(0).string("txHash"));
+        Assert.assertEquals(hash(sign(8)), results.get(1).string("txHash"));
+        Assert.assertNotNull(results.get(2).string("error"));
+        // transactions of the batch are registered all at once before sending them
+        ArgumentCaptor<List> registered = ArgumentCaptor.forClass(List.class);
+        verify(transactionManager, times(1)).registerTransactions(registered.capture());
+        List<Transaction> registeredTxs = registered.getValue();
+        Assert.assertEquals(2, registeredTxs.size());
+        Assert.assertEquals(hash(sign(7)), registeredTxs.get(0).getTxHash());
+        Assert.assertEquals("0x7", registeredTxs.get(0).getNonce());
+        Assert.assertEquals(FROM, registeredTxs.get(0).getFrom());
+        Assert.assertEquals("function1", registeredTxs.get(0).getFunctionId());
+        Assert.assertEquals(1000L, registeredTxs.get(0).getTimeout());
+        Assert.assertEquals(2L, registeredTxs.get(0).getConfirmationBlocks());
+        Assert.assertEquals(hash(sign(8)), registeredTxs.get(1).getTxHash());
+        Assert.assertEquals("0x8", registeredTxs.get(1).getNonce());
+        Assert.assertEquals(FROM, registeredTxs.get(1).getFrom());
+        // both transactions go in the same request to the node
+        verify(httpService, times(1)).post(any(Json.class));
+        Assert.assertEquals(2, requests.size());
+        Assert.assertEquals("eth_sendRawTransaction", requests.get(0).string("method"));
+        verify(transactionManager, never()).rejectTransaction(anyString(), any(Json.class));
+
+    }
+
+    @Test
+    public void testTransientErrorsAreRetried() throws Exception {
+
+        HttpService httpService = mock(HttpService.class);
+        AtomicInteger calls = new AtomicInteger();
+        when(httpService.post(any(Json.class))).thenAnswer(invocation -> {
+            Json request = (Json) invocation.getArguments()[0];
+            if (calls.incrementAndGet() == 1) {
+                return Json.map().set("id", request.longInteger("id")).set("error", Json.map().set("code", -32005).set("message", "daily request count exceeded, request rate limited"));
+            }
+            return Json.map().set("id", request.longInteger("id")).set("result", hash(request.strings("params").get(0)));
+        });
+        TransactionManager transactionManager = mock(TransactionManager.class);
+        TransactionSubmitter submitter = new TransactionSubmitter(new EthereumApiHelper(httpService), transactionManager, mock(NonceManager.class),
+                mock(AppLogs.class), null, new Metrics());
+        submitter.start();
+
+        submitter.submit(singleTransaction(sign(1)), "function1", 1000, 0);
+
+        verify(httpService, timeout(5000).times(2)).post(any(Json.class));
+        submitter.shutdown();
+        verify(transactionManager, never()).rejectTransaction(anyString(), any(Json.class));
+
+    }
+
+    @Test
+    public void testRejectedTransactions() throws Exception {
+
+        HttpService httpService = mock(HttpService.class);
+        when(httpService.post(any(Json.class))).thenAnswer(invocation -> {
+            Json request = (Json) invocation.getArguments()[0];
+            return Json.map().set("id", request.longInteger("id")).set("error", Json.map().set("code", -32000).set("message", "nonce too low"));
+        });
+        TransactionManager transactionManager = mock(TransactionManager.class);
+        NonceManager nonceManager = mock(NonceManager.class);
+        TransactionSubmitter submitter = new TransactionSubmitter(new EthereumApiHelper(httpService), transactionManager, nonceManager,
+                mock(AppLogs.class), null, new Metrics());
+        submitter.start();
+
+        submitter.submit(singleTransaction(sign(1)), "function1", 1000, 0);
+
+        verify(transactionManager, timeout(5000)).rejectTransaction(eq(hash(sign(1))), any(Json.class));
+        verify(nonceManager, timeout(5000)).release(FROM, 1L);
+        verify(nonceManager, timeout(5000)).resync(FROM);
+        verify(httpService, times(1)).post(any(Json.class));
+        submitter.shutdown();
+
+    }
+
+    @Test
+    public void testNonceTooLowAfterLostResponseIsNotRejected() throws Exception {
+
+        HttpService httpService = mock(HttpService.class);
+        AtomicInteger calls = new AtomicInteger();
+        when(httpService.post(any(Json.class))).thenAnswer(invocation -> {
+            Json request = (Json) invocation.getArguments()[0];
+            if (calls.incrementAndGet() == 1) {
+                // the node got the transaction but the response was lost
+                throw new RuntimeException("Read timed out");
+            }
+            // the transaction was mined before the second attempt
+            return Json.map().set("id", request.longInteger("id")).set("error", Json.map().set("code", -32000).set("message", "nonce too low"));
+        });
+        TransactionManager transactionManager = mock(TransactionManager.class);
+        NonceManager nonceManager = mock(NonceManager.class);
+        TransactionSubmitter submitter = new TransactionSubmitter(new EthereumApiHelper(httpService), transactionManager, nonceManager,
+                mock(AppLogs.class), null, new Metrics());
+        submitter.start();
+
+        submitter.submit(singleTransaction(sign(1)), "function1", 1000, 0);
+
+        verify(httpService, timeout(5000).times(2)).post(any(Json.class));
+        submitter.shutdown();
+        // it stays pending, so it is confirmed when the block is processed
+        verify(transactionManager, never()).rejectTransaction(anyString(), any(Json.class));
+        verify(nonceManager, never()).release(anyString(), anyLong());
+        verify(nonceManager, never()).resync(anyString());
+
+    }
+
+    private List<Json> singleTransaction(String data) {
+        List<Json> transactions = new ArrayList<>();
+        transactions.add(Json.map().set("data", data).set("from", FROM));
+        return transactions;
+    }
+
+    private String sign(long nonce) {
+        org.ethereum.core.Transaction tx = new org.ethereum.core.Transaction(longToBytesNoLeadZeroes(nonce), longToBytesNoLeadZeroes(20000000000L), longToBytesNoLeadZeroes(21000L),
+                Hex.decode("3535353535353535353535353535353535353535"), longToBytesNoLeadZeroes(1L), null, 1);
+        tx.sign(KEY);
+        return "0x" + Hex.toHexString(tx.getEncoded());
+    }
+
+    private String hash(String data) {
+        return "0x" + Hex.toHexString(HashUtil.sha3(Hex.decode(data.substring(2))));
+    }
+}
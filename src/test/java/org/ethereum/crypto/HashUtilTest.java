@@ -0,0 +1,55 @@
+package org.ethereum.crypto;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class HashUtilTest {
+
+    @Test
+    public void testKnownHashes() {
+
+        Assert.assertEquals("c5d2460186f7233c927e7db2dcc703c0e500b653ca82273b7bfad8045d85a470", Hex.toHexString(HashUtil.sha3(new byte[0])));
+        Assert.assertEquals("ddf252ad1be2c89b69c2b068fc378daa952ba7f163c4a11628f55a4df523b3ef",
+                Hex.toHexString(HashUtil.sha3("Transfer(address,address,uint256)".getBytes())));
+
+    }
+
+    @Test
+    public void testSameResultsThanProvider() {
+
+        Random random = new Random(1);
+        for (int size : new int[]{0, 1, 135, 136, 137, 1000, 5000}) {
+            byte[] input = new byte[size];
+            random.nextBytes(input);
+            byte[] expected = HashUtil.sha3WithProvider(input);
+
+            Assert.assertArrayEquals(expected, HashUtil.sha3(input));
+
+            byte[] output = new byte[HashUtil.HASH_256_LENGTH + 4];
+            HashUtil.sha3(input, 0, input.length, output, 4);
+            Assert.assertEquals(Hex.toHexString(expected), Hex.toHexString(output, 4, HashUtil.HASH_256_LENGTH));
+
+            Assert.assertArrayEquals(expected, HashUtil.sha3(ByteBuffer.wrap(input)));
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(size);
+            direct.put(input);
+            direct.flip();
+            Assert.assertArrayEquals(expected, HashUtil.sha3(direct));
+            Assert.assertFalse(direct.hasRemaining());
+
+            if (size > 2) {
+                byte[] first = new byte[2];
+                byte[] second = new byte[size - 2];
+                System.arraycopy(input, 0, first, 0, 2);
+                System.arraycopy(input, 2, second, 0, size - 2);
+                Assert.assertArrayEquals(expected, HashUtil.sha3(first, second));
+                Assert.assertArrayEquals(HashUtil.sha3WithProvider(second), HashUtil.sha3(input, 2, size - 2));
+            }
+        }
+
+    }
+}
@@ -0,0 +1,67 @@
+package org.ethereum.crypto.cryptohash;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.spongycastle.crypto.digests.KeccakDigest;
+import org.spongycastle.util.encoders.Hex;
+
+import java.util.Random;
+
+public class FastKeccak256Test {
+
+    @Test
+    public void testKnownHashes() {
+
+        FastKeccak256 digest = new FastKeccak256();
+        Assert.assertEquals("c5d2460186f7233c927e7db2dcc703c0e500b653ca82273b7bfad8045d85a470", Hex.toHexString(digest.digest()));
+        digest.update("Transfer(address,address,uint256)".getBytes());
+        Assert.assertEquals("ddf252ad1be2c89b69c2b068fc378daa952ba7f163c4a11628f55a4df523b3ef", Hex.toHexString(digest.digest()));
+
+    }
+
+    @Test
+    public void testSameResultsThanOtherEngines() {
+
+        Random random = new Random(1);
+        FastKeccak256 digest = new FastKeccak256();
+        for (int size = 0; size <= 65536; size = size < 300 ? size + 1 : size * 2 + 7) {
+            byte[] input = new byte[size];
+            random.nextBytes(input);
+
+            Keccak256 keccak256 = new Keccak256();
+            keccak256.update(input, 0, size);
+            byte[] expected = keccak256.digest();
+
+            KeccakDigest keccakDigest = new KeccakDigest(256);
+            keccakDigest.update(input, 0, size);
+            byte[] bouncyCastle = new byte[32];
+            keccakDigest.doFinal(bouncyCastle, 0);
+            Assert.assertArrayEquals("Size " + size, expected, bouncyCastle);
+
+            digest.update(input, 0, size);
+            Assert.assertArrayEquals("Size " + size, expected, digest.digest());
+
+            // the same data split in parts that don't match the blocks
+            int cut = random.nextInt(size + 1);
+            digest.update(input, 0, cut);
+            if (cut < size) {
+                digest.update(input[cut]);
+                digest.update(input, cut + 1, size - cut - 1);
+            }
+            byte[] output = new byte[FastKeccak256.DIGEST_LENGTH + 3];
+            digest.digest(output, 3);
+            Assert.assertEquals("Size " + size, Hex.toHexString(expected), Hex.toHexString(output, 3, FastKeccak256.DIGEST_LENGTH));
+        }
+
+    }
+
+    @Test
+    public void testReset() {
+
+        FastKeccak256 digest = new FastKeccak256();
+        digest.update(new byte[200], 0, 200);
+        digest.reset();
+        Assert.assertEquals("c5d2460186f7233c927e7db2dcc703c0e500b653ca82273b7bfad8045d85a470", Hex.toHexString(digest.digest()));
+
+    }
+}